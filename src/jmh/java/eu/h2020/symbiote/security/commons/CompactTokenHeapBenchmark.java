@@ -0,0 +1,93 @@
+package eu.h2020.symbiote.security.commons;
+
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.security.KeyPair;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained per token by tokens holding the jjwt claims map (as all tokens used to) compared to the tokens backed
+ * by a {@link CompactToken}, reported as the bytesPerToken secondary result. The token strings themselves are shared
+ * and not counted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+// aux counters are summed over the iterations
+@Measurement(iterations = 1, time = 1)
+@Fork(1)
+public class CompactTokenHeapBenchmark {
+
+    private static final int TOKENS_COUNT = 5000;
+    private static final int USERS_COUNT = 100;
+
+    private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+    private String[] tokenStrings;
+    private Token[] tokens;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+        public long bytesPerToken;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyPair aamKeyPair = CryptoHelper.createKeyPair();
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("name", "test2");
+        attributes.put("age", "21");
+        tokenStrings = new String[TOKENS_COUNT];
+        for (int i = 0; i < TOKENS_COUNT; i++) {
+            tokenStrings[i] = DummyTokenIssuer.buildAuthorizationToken("user" + (i % USERS_COUNT) + "@clientId",
+                    attributes,
+                    CryptoHelper.createKeyPair().getPublic().getEncoded(),
+                    Token.Type.HOME,
+                    3600000L,
+                    "platform-1",
+                    aamKeyPair.getPublic(),
+                    aamKeyPair.getPrivate(),
+                    DummyTokenIssuer.SignatureType.PROPER);
+        }
+    }
+
+    @Benchmark
+    public void jjwtClaims(HeapCounters heapCounters) throws Exception {
+        tokens = null;
+        long usedBefore = usedHeap();
+        tokens = new Token[TOKENS_COUNT];
+        for (int i = 0; i < TOKENS_COUNT; i++) {
+            // the claims map parsing the token string used to keep
+            tokens[i] = new Token();
+            tokens[i].setClaims(ParsedJws.parse(tokenStrings[i]).getClaims());
+        }
+        heapCounters.bytesPerToken = (usedHeap() - usedBefore) / TOKENS_COUNT;
+    }
+
+    @Benchmark
+    public void compact(HeapCounters heapCounters) throws Exception {
+        tokens = null;
+        long usedBefore = usedHeap();
+        tokens = new Token[TOKENS_COUNT];
+        for (int i = 0; i < TOKENS_COUNT; i++) {
+            tokens[i] = new Token(CompactToken.unverified(ParsedJws.parse(tokenStrings[i])));
+        }
+        heapCounters.bytesPerToken = (usedHeap() - usedBefore) / TOKENS_COUNT;
+    }
+
+    private long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,73 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claims extraction with the streaming {@link JWTClaimsReader} compared to the former ObjectMapper per call path.
+ * Run with the GC profiler (-prof gc) to see the allocation per call (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClaimsExtractionBenchmark {
+
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyPair aamKeyPair = CryptoHelper.createKeyPair();
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("name", "test2");
+        attributes.put("age", "21");
+        token = DummyTokenIssuer.buildAuthorizationToken("userId@clientId",
+                attributes,
+                CryptoHelper.createKeyPair().getPublic().getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "platform-1",
+                aamKeyPair.getPublic(),
+                aamKeyPair.getPrivate(),
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+
+    @Benchmark
+    public JWTClaims streaming() throws Exception {
+        return JWTEngine.getClaimsFromToken(token);
+    }
+
+    @Benchmark
+    public JWTClaims objectMapperPerCall() throws Exception {
+        HashMap<String, Object> retMap = new HashMap<>();
+        ObjectMapper mapper = new ObjectMapper();
+        String[] jwtParts = token.split("\\.");
+        retMap.putAll(mapper.readValue(new String(Base64.getDecoder().decode(jwtParts[0])), new TypeReference<Map<String, String>>() {
+        }));
+        String claimsString = new String(Base64.getDecoder().decode(jwtParts[1]));
+        Map<String, Object> claimsMap = mapper.readValue(claimsString, new TypeReference<Map<String, String>>() {
+        });
+        Map<String, String> attributes = new HashMap<>();
+        for (String key : claimsMap.keySet()) {
+            Object value = claimsMap.get(key);
+            if (key.startsWith(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX))
+                attributes.put(key.substring(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX.length()), (String) value);
+            else
+                retMap.put(key, value);
+        }
+        return new JWTClaims(retMap, attributes);
+    }
+}
@@ -0,0 +1,54 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ES256 verification of an AAM signed token with the {@link PrecomputedES256Verifier} of a registered issuer key
+ * compared to the generic {@link ES256Engine} one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrecomputedVerifierBenchmark {
+
+    private KeyPair aamKeyPair;
+    private PrecomputedES256Verifier precomputedVerifier;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        aamKeyPair = CryptoHelper.createKeyPair();
+        precomputedVerifier = PrecomputedES256Verifier.create((ECPublicKey) aamKeyPair.getPublic());
+        token = DummyTokenIssuer.buildAuthorizationToken("userId@clientId",
+                null,
+                CryptoHelper.createKeyPair().getPublic().getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "platform-1",
+                aamKeyPair.getPublic(),
+                aamKeyPair.getPrivate(),
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+
+    @Benchmark
+    public boolean generic() throws Exception {
+        return ES256Engine.verify(token, aamKeyPair.getPublic());
+    }
+
+    @Benchmark
+    public boolean precomputed() {
+        return precomputedVerifier.verify(token);
+    }
+}
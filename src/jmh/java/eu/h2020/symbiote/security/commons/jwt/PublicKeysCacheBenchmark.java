@@ -0,0 +1,45 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the IPK/SPK claims' keys on every call (as JWTEngine and MutualAuthenticationHelper used to) compared to
+ * the {@link PublicKeysCache} lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublicKeysCacheBenchmark {
+
+    private String encodedKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        encodedKey = Base64.getEncoder().encodeToString(CryptoHelper.createKeyPair().getPublic().getEncoded());
+        PublicKeysCache.getPublicKey(encodedKey);
+    }
+
+    @Benchmark
+    public PublicKey decodePerCall() throws Exception {
+        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(Base64.getDecoder().decode(encodedKey));
+        KeyFactory keyFactory = KeyFactory.getInstance("EC");
+        return keyFactory.generatePublic(keySpec);
+    }
+
+    @Benchmark
+    public PublicKey cached() throws Exception {
+        return PublicKeysCache.getPublicKey(encodedKey);
+    }
+}
@@ -0,0 +1,61 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.utils.DummyCertificateIssuer;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trust check of a client → platform AAM → core AAM chain with the {@link SymbioteCertificateChainVerifier} compared
+ * to the PKIX path building it replaced (the chain trust cache is bypassed by both).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CertificateChainVerificationBenchmark {
+
+    private X509Certificate coreAAMCertificate;
+    private X509Certificate platformAAMCertificate;
+    private X509Certificate clientCertificate;
+    private ParsedCertificatesCache.ParsedCertificate parsedCoreAAMCertificate;
+    private ParsedCertificatesCache.ParsedCertificate parsedPlatformAAMCertificate;
+    private ParsedCertificatesCache.ParsedCertificate parsedClientCertificate;
+
+    @Setup
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyPair coreAAMKeyPair = CryptoHelper.createKeyPair();
+        coreAAMCertificate = DummyCertificateIssuer.buildCoreAAMCertificate(coreAAMKeyPair);
+        KeyPair platformAAMKeyPair = CryptoHelper.createKeyPair();
+        platformAAMCertificate = DummyCertificateIssuer.buildPlatformAAMCertificate("platform-1", platformAAMKeyPair,
+                coreAAMCertificate, coreAAMKeyPair.getPrivate());
+        clientCertificate = DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), platformAAMCertificate, platformAAMKeyPair.getPrivate());
+        parsedCoreAAMCertificate = ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(coreAAMCertificate));
+        parsedPlatformAAMCertificate = ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(platformAAMCertificate));
+        parsedClientCertificate = ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(clientCertificate));
+        if (!direct() || !pkix())
+            throw new IllegalStateException("the benchmarked chain should be trusted");
+    }
+
+    @Benchmark
+    public Boolean direct() {
+        return SymbioteCertificateChainVerifier.isTrusted(parsedCoreAAMCertificate,
+                parsedPlatformAAMCertificate,
+                parsedClientCertificate,
+                false);
+    }
+
+    @Benchmark
+    public boolean pkix() throws Exception {
+        return CryptoHelper.isClientCertificateChainTrustedByPKIX(coreAAMCertificate,
+                platformAAMCertificate,
+                clientCertificate,
+                false);
+    }
+}
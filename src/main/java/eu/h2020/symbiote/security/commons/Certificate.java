@@ -1,14 +1,11 @@
 package eu.h2020.symbiote.security.commons;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.helpers.ParsedCertificatesCache;
 import org.springframework.data.annotation.Id;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 
 /**
@@ -22,6 +19,8 @@ public class Certificate {
 
     @Id
     private String certificateString = "";
+    // parsed on first use, dropped when the PEM value changes
+    private transient volatile ParsedCertificatesCache.ParsedCertificate parsedCertificate;
 
     /**
      * required by JPA
@@ -39,17 +38,33 @@ public class Certificate {
     }
 
     /**
-     * @return retrieve the X509 certificate that corresponds to the stored string
+     * @return retrieve the X509 certificate that corresponds to the stored string, parsed only on the first call and
+     * shared with the other {@link Certificate}s holding the same PEM value, so it must not be modified
      * @throws CertificateException on internal PEM string value to {@link X509Certificate} conversion (e.g. string value empty)
      */
     @JsonIgnore
     public X509Certificate getX509() throws CertificateException {
-        if (certificateString.isEmpty())
-            throw new CertificateException("internal PEM certificate is not initialized");
-        ECDSAHelper.enableECDSAProvider();
-        InputStream stream = new ByteArrayInputStream(this.getCertificateString().getBytes(StandardCharsets.UTF_8));
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        return (X509Certificate) cf.generateCertificate(stream);
+        return getParsedCertificate().getX509Certificate();
+    }
+
+    /**
+     * @return public key of the stored certificate, parsed only on the first call
+     * @throws CertificateException on internal PEM string value to {@link X509Certificate} conversion (e.g. string value empty)
+     */
+    @JsonIgnore
+    public PublicKey getPublicKey() throws CertificateException {
+        return getParsedCertificate().getPublicKey();
+    }
+
+    private ParsedCertificatesCache.ParsedCertificate getParsedCertificate() throws CertificateException {
+        ParsedCertificatesCache.ParsedCertificate parsed = parsedCertificate;
+        if (parsed == null) {
+            if (certificateString.isEmpty())
+                throw new CertificateException("internal PEM certificate is not initialized");
+            parsed = ParsedCertificatesCache.parse(certificateString);
+            parsedCertificate = parsed;
+        }
+        return parsed;
     }
 
     /**
@@ -67,6 +82,7 @@ public class Certificate {
             throw new CertificateException("trying to pass empty value");
         // removing carriage return to make the string platform independent
         this.certificateString = certificateString.replace("\r", "");
+        this.parsedCertificate = null;
     }
 
     @Override
@@ -0,0 +1,447 @@
+package eu.h2020.symbiote.security.commons;
+
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.commons.jwt.JWTClaims;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.RequiredTypeException;
+
+import java.util.*;
+
+/**
+ * Immutable and memory efficient form of a {@link Token}, meant for keeping large numbers of tokens in memory (e.g.
+ * in caches and wallets). The tokens built from their strings keep the full jjwt claims, only the ones given by
+ * {@link #toToken()} are backed by this form.
+ * <p>
+ * Issuer, subject and the issuer public key are interned, as they are shared by many tokens, the dates are kept as
+ * primitives and the SymbIoTe attributes in a single array sorted by their names. No claims map is retained,
+ * {@link #getClaims()} is a read-only view over the fields.
+ * <p>
+ * Only the symbIoTe token claims are kept (jti, iss, sub, iat, exp, ipk, spk, ttyp and the SymbIoTe attributes), any
+ * other claim (e.g. aud or nbf) is dropped.
+ */
+public final class CompactToken {
+
+    // marks the absent dates
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final String[] NO_ATTRIBUTES = new String[0];
+    private static final String ISSUER_PUBLIC_KEY = "ipk";
+    private static final String SUBJECT_PUBLIC_KEY = "spk";
+
+    private final String token;
+    private final String id;
+    private final String issuer;
+    private final String subject;
+    private final long issuedAt;
+    private final long expiration;
+    private final String issuerPublicKey;
+    private final String subjectPublicKey;
+    private final Token.Type type;
+    // attribute names (without the SymbIoTe prefix) followed by their values, sorted by the names
+    private final String[] attributes;
+
+    private CompactToken(String token,
+                         String id,
+                         String issuer,
+                         String subject,
+                         long issuedAt,
+                         long expiration,
+                         String issuerPublicKey,
+                         String subjectPublicKey,
+                         Token.Type type,
+                         Map<String, String> attributes) {
+        this.token = token;
+        this.id = id;
+        this.issuer = intern(issuer);
+        this.subject = intern(subject);
+        this.issuedAt = issuedAt;
+        this.expiration = expiration;
+        this.issuerPublicKey = intern(issuerPublicKey);
+        this.subjectPublicKey = subjectPublicKey;
+        this.type = type;
+        this.attributes = flatten(attributes);
+    }
+
+    /**
+     * @param token validated token
+     * @return compact form of the token
+     */
+    public static CompactToken of(Token token) {
+        Claims claims = token.getClaims();
+        Map<String, String> attributes = new HashMap<>();
+        for (Map.Entry<String, Object> claim : claims.entrySet()) {
+            if (claim.getKey().startsWith(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX) && claim.getValue() != null)
+                attributes.put(claim.getKey().substring(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX.length()), claim.getValue().toString());
+        }
+        return new CompactToken(token.getToken(),
+                claims.getId(),
+                claims.getIssuer(),
+                claims.getSubject(),
+                claims.getIssuedAt() == null ? NO_TIME : claims.getIssuedAt().getTime(),
+                claims.getExpiration() == null ? NO_TIME : claims.getExpiration().getTime(),
+                (String) claims.get(ISSUER_PUBLIC_KEY),
+                (String) claims.get(SUBJECT_PUBLIC_KEY),
+                token.getType(),
+                attributes);
+    }
+
+    /**
+     * Builds the compact token straight from the decoded JWS, once its signature is verified.
+     *
+     * @param parsedJws decoded token string
+     * @return compact form of the token
+     * @throws ValidationException if the token is not valid or has no or an unknown type
+     */
+    public static CompactToken of(ParsedJws parsedJws) throws ValidationException {
+        ValidationStatus validationStatus = parsedJws.getValidationResult().getStatusOrThrow();
+        if (validationStatus != ValidationStatus.VALID) {
+            throw new ValidationException("Provided token string is not valid: " + validationStatus);
+        }
+        return unverified(parsedJws);
+    }
+
+    /**
+     * Builds the compact token from the decoded JWS without verifying the signature, see {@link Token#unverified}.
+     *
+     * @param parsedJws decoded token string
+     * @return compact form of the token
+     * @throws ValidationException if the token has no or an unknown type
+     */
+    static CompactToken unverified(ParsedJws parsedJws) throws ValidationException {
+        JWTClaims jwtClaims = parsedJws.getJwtClaims();
+        if (jwtClaims.getTtyp() == null)
+            throw new ValidationException("Provided token string has no type");
+        Token.Type type;
+        try {
+            type = Token.Type.valueOf(jwtClaims.getTtyp());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Provided token string has an unknown type: " + jwtClaims.getTtyp());
+        }
+        return new CompactToken(parsedJws.getJwtString(),
+                jwtClaims.getJti(),
+                jwtClaims.getIss(),
+                jwtClaims.getSub(),
+                jwtClaims.getIat() == null ? NO_TIME : jwtClaims.getIat(),
+                jwtClaims.getExp() == null ? NO_TIME : jwtClaims.getExp(),
+                jwtClaims.getIpk(),
+                jwtClaims.getSpk(),
+                type,
+                jwtClaims.getAtt());
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @return true if the token carries the issue time
+     */
+    public boolean hasIssuedAt() {
+        return issuedAt != NO_TIME;
+    }
+
+    /**
+     * @return issue time in milliseconds, only meaningful if {@link #hasIssuedAt()}
+     */
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    /**
+     * @return true if the token carries the expiration time
+     */
+    public boolean hasExpiration() {
+        return expiration != NO_TIME;
+    }
+
+    /**
+     * @return expiration time in milliseconds, only meaningful if {@link #hasExpiration()}
+     */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * @param timeMillis to check the expiration against
+     * @return true if the token expired before the given time
+     */
+    public boolean isExpired(long timeMillis) {
+        return hasExpiration() && expiration < timeMillis;
+    }
+
+    public String getIssuerPublicKey() {
+        return issuerPublicKey;
+    }
+
+    public String getSubjectPublicKey() {
+        return subjectPublicKey;
+    }
+
+    public Token.Type getType() {
+        return type;
+    }
+
+    /**
+     * @param name of the attribute, without the SymbIoTe prefix
+     * @return value of the attribute or null if the token doesn't have it
+     */
+    public String getAttribute(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : attributes[attributes.length / 2 + index];
+    }
+
+    /**
+     * @return attributes' names (without the SymbIoTe prefix) to values, sorted by the names
+     */
+    public Map<String, String> getAttributes() {
+        int count = attributes.length / 2;
+        Map<String, String> attributesMap = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++)
+            attributesMap.put(attributes[i], attributes[count + i]);
+        return Collections.unmodifiableMap(attributesMap);
+    }
+
+    /**
+     * @return read-only claims of the token in the form provided by {@link Token#getClaims()}, the entries are only
+     * materialized when iterated
+     */
+    public Claims getClaims() {
+        return new ClaimsView();
+    }
+
+    /**
+     * @return the token backed by this compact form, carrying over its validity
+     */
+    public Token toToken() {
+        return new Token(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return token.equals(((CompactToken) o).token);
+    }
+
+    @Override
+    public int hashCode() {
+        return token.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return token;
+    }
+
+    private int indexOf(String name) {
+        return Arrays.binarySearch(attributes, 0, attributes.length / 2, name);
+    }
+
+    private static String[] flatten(Map<String, String> attributes) {
+        if (attributes == null || attributes.isEmpty())
+            return NO_ATTRIBUTES;
+        String[] names = attributes.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        String[] flattened = new String[names.length * 2];
+        for (int i = 0; i < names.length; i++) {
+            flattened[i] = names[i];
+            flattened[names.length + i] = attributes.get(names[i]);
+        }
+        return flattened;
+    }
+
+    private static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+
+    private static void putIfNotNull(Map<String, Object> claimsMap, String name, String value) {
+        if (value != null)
+            claimsMap.put(name, value);
+    }
+
+    private final class ClaimsView extends AbstractMap<String, Object> implements Claims {
+
+        @Override
+        public Object get(Object name) {
+            if (!(name instanceof String))
+                return null;
+            String claimName = (String) name;
+            switch (claimName) {
+                case Claims.ID:
+                    return id;
+                case Claims.ISSUER:
+                    return issuer;
+                case Claims.SUBJECT:
+                    return subject;
+                case Claims.ISSUED_AT:
+                    return hasIssuedAt() ? issuedAt / 1000 : null;
+                case Claims.EXPIRATION:
+                    return hasExpiration() ? expiration / 1000 : null;
+                case ISSUER_PUBLIC_KEY:
+                    return issuerPublicKey;
+                case SUBJECT_PUBLIC_KEY:
+                    return subjectPublicKey;
+                case SecurityConstants.CLAIM_NAME_TOKEN_TYPE:
+                    return type.name();
+                default:
+                    return claimName.startsWith(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX)
+                            ? getAttribute(claimName.substring(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX.length()))
+                            : null;
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return get(name) != null;
+        }
+
+        @Override
+        public int size() {
+            int size = attributes.length / 2 + 1;
+            for (Object value : new Object[]{id, issuer, subject, issuerPublicKey, subjectPublicKey}) {
+                if (value != null)
+                    size++;
+            }
+            if (hasIssuedAt())
+                size++;
+            if (hasExpiration())
+                size++;
+            return size;
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            if (value == null)
+                return false;
+            for (String name : new String[]{Claims.ID, Claims.ISSUER, Claims.SUBJECT, Claims.ISSUED_AT, Claims.EXPIRATION,
+                    ISSUER_PUBLIC_KEY, SUBJECT_PUBLIC_KEY, SecurityConstants.CLAIM_NAME_TOKEN_TYPE}) {
+                if (value.equals(get(name)))
+                    return true;
+            }
+            for (int i = attributes.length / 2; i < attributes.length; i++) {
+                if (value.equals(attributes[i]))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            Map<String, Object> claimsMap = new LinkedHashMap<>();
+            putIfNotNull(claimsMap, Claims.ID, id);
+            putIfNotNull(claimsMap, Claims.ISSUER, issuer);
+            putIfNotNull(claimsMap, Claims.SUBJECT, subject);
+            if (hasIssuedAt())
+                claimsMap.put(Claims.ISSUED_AT, issuedAt / 1000);
+            if (hasExpiration())
+                claimsMap.put(Claims.EXPIRATION, expiration / 1000);
+            putIfNotNull(claimsMap, ISSUER_PUBLIC_KEY, issuerPublicKey);
+            putIfNotNull(claimsMap, SUBJECT_PUBLIC_KEY, subjectPublicKey);
+            claimsMap.put(SecurityConstants.CLAIM_NAME_TOKEN_TYPE, type.name());
+            int count = attributes.length / 2;
+            for (int i = 0; i < count; i++)
+                claimsMap.put(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX + attributes[i], attributes[count + i]);
+            return Collections.unmodifiableMap(claimsMap).entrySet();
+        }
+
+        @Override
+        public <T> T get(String claimName, Class<T> requiredType) {
+            Object value = get(claimName);
+            if (value == null)
+                return null;
+            // the dates are kept in seconds, like in the JWS
+            if (requiredType == Date.class && value instanceof Long)
+                value = new Date((Long) value * 1000);
+            if (!requiredType.isInstance(value))
+                throw new RequiredTypeException("Expected value to be of type: " + requiredType + ", but was " + value.getClass());
+            return requiredType.cast(value);
+        }
+
+        @Override
+        public String getIssuer() {
+            return issuer;
+        }
+
+        @Override
+        public String getSubject() {
+            return subject;
+        }
+
+        @Override
+        public String getAudience() {
+            return null;
+        }
+
+        @Override
+        public Date getExpiration() {
+            return hasExpiration() ? new Date(expiration) : null;
+        }
+
+        @Override
+        public Date getNotBefore() {
+            return null;
+        }
+
+        @Override
+        public Date getIssuedAt() {
+            return hasIssuedAt() ? new Date(issuedAt) : null;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public Claims setIssuer(String iss) {
+            throw immutable();
+        }
+
+        @Override
+        public Claims setSubject(String sub) {
+            throw immutable();
+        }
+
+        @Override
+        public Claims setAudience(String aud) {
+            throw immutable();
+        }
+
+        @Override
+        public Claims setExpiration(Date exp) {
+            throw immutable();
+        }
+
+        @Override
+        public Claims setNotBefore(Date nbf) {
+            throw immutable();
+        }
+
+        @Override
+        public Claims setIssuedAt(Date iat) {
+            throw immutable();
+        }
+
+        @Override
+        public Claims setId(String jti) {
+            throw immutable();
+        }
+
+        private UnsupportedOperationException immutable() {
+            return new UnsupportedOperationException("Claims of a compact token are read-only");
+        }
+    }
+}
@@ -5,7 +5,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
 import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
-import eu.h2020.symbiote.security.commons.jwt.JWTEngine;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
 import io.jsonwebtoken.Claims;
 import org.springframework.data.annotation.Transient;
 
@@ -34,12 +34,13 @@ public class Coupon {
 
     @JsonCreator
     public Coupon(@JsonProperty("couponString") String couponString) throws ValidationException {
-        ValidationStatus validationStatus = JWTEngine.validateTokenString(couponString);
+        ParsedJws parsedJws = ParsedJws.parse(couponString);
+        ValidationStatus validationStatus = parsedJws.getValidationStatus();
         if (validationStatus != ValidationStatus.VALID) {
             throw new ValidationException("Provided coupon string is not valid: " + validationStatus);
         }
         this.couponString = couponString;
-        this.claims = JWTEngine.getClaims(couponString);
+        this.claims = parsedJws.getClaims();
         this.id = claims.getId();
         this.type = Type.valueOf((String) claims.get(SecurityConstants.CLAIM_NAME_TOKEN_TYPE));
     }
@@ -0,0 +1,118 @@
+package eu.h2020.symbiote.security.commons;
+
+import eu.h2020.symbiote.security.accesspolicies.IAccessPolicy;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
+import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.*;
+
+/**
+ * Tokens of a security request the access policies are resolved with. The tokens can be added with their signatures
+ * verified upfront or deferred: the policies then see the deferred tokens built from their unverified claims, but only
+ * the credentials of the tokens whose signatures got verified are ever given back.
+ */
+public class PolicyCandidateTokens {
+
+    private static final Log log = LogFactory.getLog(PolicyCandidateTokens.class);
+
+    private final Map<Token, SecurityCredentials> credentials = new HashMap<>();
+    // tokens whose signatures are yet to be verified
+    private final Map<Token, ParsedJws> unverifiedTokens = new HashMap<>();
+
+    /**
+     * @param parsedJws   decoded token string
+     * @param credentials the token came with
+     * @return true if the token is valid and was added
+     */
+    public boolean addVerified(ParsedJws parsedJws, SecurityCredentials credentials) {
+        Token token = Token.ofValid(parsedJws);
+        if (token == null) {
+            log.debug(parsedJws.getValidationResult());
+            return false;
+        }
+        this.credentials.put(token, credentials);
+        return true;
+    }
+
+    /**
+     * Adds the token without verifying its signature, expired and otherwise bogus tokens are still rejected right away.
+     *
+     * @param parsedJws   decoded token string
+     * @param credentials the token came with
+     * @return true if the token passed the checks of its claims and was added
+     */
+    public boolean addDeferred(ParsedJws parsedJws, SecurityCredentials credentials) {
+        ValidationResult preValidationResult = parsedJws.getPreValidationResult();
+        if (!preValidationResult.isValid()) {
+            log.debug(preValidationResult);
+            return false;
+        }
+        Token token;
+        try {
+            token = Token.unverified(parsedJws);
+        } catch (ValidationException e) {
+            log.debug(e);
+            return false;
+        }
+        this.credentials.put(token, credentials);
+        unverifiedTokens.put(token, parsedJws);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return credentials.isEmpty();
+    }
+
+    /**
+     * Resolves the policy, verifying the signatures of the tokens it picks. The tokens failing the verification are
+     * dropped and the policy is resolved again without them.
+     *
+     * @param accessPolicy to be satisfied
+     * @return credentials of the verified tokens satisfying the policy, empty if it can't be satisfied
+     */
+    public Set<SecurityCredentials> getSatisfyingCredentials(IAccessPolicy accessPolicy) {
+        while (!credentials.isEmpty()) {
+            Set<Token> validTokens = accessPolicy.isSatisfiedWith(credentials.keySet());
+            boolean allVerified = true;
+            for (Token token : validTokens) {
+                if (!isVerified(token))
+                    allVerified = false;
+            }
+            if (allVerified) {
+                Set<SecurityCredentials> validCredentials = new HashSet<>();
+                for (Token token : validTokens) {
+                    validCredentials.add(credentials.get(token));
+                }
+                return validCredentials;
+            }
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * @return credentials of any token whose signature is verified, null if there are none
+     */
+    public SecurityCredentials getAnyVerifiedCredentials() {
+        for (Token token : new ArrayList<>(credentials.keySet())) {
+            if (isVerified(token))
+                return credentials.get(token);
+        }
+        return null;
+    }
+
+    private boolean isVerified(Token token) {
+        ParsedJws parsedJws = unverifiedTokens.remove(token);
+        // already verified
+        if (parsedJws == null)
+            return credentials.containsKey(token);
+        ValidationResult validationResult = parsedJws.getValidationResult();
+        if (validationResult.isValid())
+            return true;
+        log.debug(validationResult);
+        credentials.remove(token);
+        return false;
+    }
+}
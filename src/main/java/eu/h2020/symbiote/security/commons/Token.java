@@ -3,7 +3,7 @@ package eu.h2020.symbiote.security.commons;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
 import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
-import eu.h2020.symbiote.security.commons.jwt.JWTEngine;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
 import io.jsonwebtoken.Claims;
 import org.springframework.data.annotation.Transient;
 
@@ -39,6 +39,67 @@ public class Token {
         this.setToken(token);
     }
 
+    /**
+     * Used for tokens whose validity was already established.
+     *
+     * @param token  compacted signed token string
+     * @param claims of the token
+     */
+    Token(String token, Claims claims) {
+        this.token = token;
+        this.setClaims(claims);
+    }
+
+    /**
+     * Used for tokens whose validity was already established.
+     *
+     * @param compactToken backing the token, see {@link CompactToken#toToken()}
+     */
+    Token(CompactToken compactToken) {
+        this.token = compactToken.getToken();
+        this.claims = compactToken.getClaims();
+        this.id = compactToken.getId();
+        this.type = compactToken.getType();
+    }
+
+    /**
+     * Builds the token from its decoded JWS without verifying the signature, it must not be trusted before
+     * {@link ParsedJws#getValidationStatus()} confirms it. Only handed to the access policies by
+     * {@link PolicyCandidateTokens}, which never gives back the unverified ones.
+     *
+     * @param parsedJws decoded token string
+     * @return unverified token
+     * @throws ValidationException if the token has no or an unknown type
+     */
+    static Token unverified(ParsedJws parsedJws) throws ValidationException {
+        if (parsedJws.getJwtClaims().getTtyp() == null)
+            throw new ValidationException("Provided token string has no type");
+        try {
+            return new Token(parsedJws.getJwtString(), parsedJws.getClaims());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Provided token string has an unknown type: " + parsedJws.getJwtClaims().getTtyp());
+        }
+    }
+
+    /**
+     * Non-throwing counterpart of {@link #Token(String)}, for paths where invalid tokens are expected (the reason
+     * of the rejection is then given by {@link ParsedJws#getValidationResult()}, without repeating the signature
+     * verification).
+     *
+     * @param parsedJws decoded token string
+     * @return the token or null if the JWS is not a valid token
+     */
+    public static Token ofValid(ParsedJws parsedJws) {
+        if (parsedJws.getJwtClaims().getTtyp() == null || !parsedJws.getValidationResult().isValid())
+            return null;
+        try {
+            return unverified(parsedJws);
+        } catch (ValidationException e) {
+            // coupon, not a token
+            return null;
+        }
+    }
+
     public String getToken() {
         return token;
     }
@@ -47,12 +108,14 @@ public class Token {
      * @param token compacted signed token string
      */
     public void setToken(String token) throws ValidationException {
-        ValidationStatus validationStatus = JWTEngine.validateTokenString(token);
+        ParsedJws parsedJws = ParsedJws.parse(token);
+        ValidationStatus validationStatus = parsedJws.getValidationResult().getStatusOrThrow();
         if (validationStatus != ValidationStatus.VALID) {
             throw new ValidationException("Provided token string is not valid: " + validationStatus);
         }
+        Token validToken = unverified(parsedJws);
         this.token = token;
-        this.setClaims(JWTEngine.getClaims(token));
+        this.setClaims(validToken.claims);
     }
 
     @JsonIgnore
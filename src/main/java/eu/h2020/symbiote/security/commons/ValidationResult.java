@@ -0,0 +1,105 @@
+package eu.h2020.symbiote.security.commons;
+
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Outcome of a validation returned instead of thrown, so that rejecting invalid input costs no exception (message
+ * concatenation, stack trace) and no logging unless the caller asks for it.
+ * <p>
+ * A result either carries a {@link ValidationStatus} the validation resolved to, or is an error (with
+ * {@link ValidationStatus#UNKNOWN} status) for input that couldn't be validated at all, where the throwing APIs
+ * raise a {@link ValidationException}. The results of all the statuses and of the common errors are preallocated.
+ */
+public final class ValidationResult {
+
+    private static final Map<ValidationStatus, ValidationResult> STATUS_RESULTS;
+
+    static {
+        Map<ValidationStatus, ValidationResult> statusResults = new EnumMap<>(ValidationStatus.class);
+        for (ValidationStatus validationStatus : ValidationStatus.values()) {
+            statusResults.put(validationStatus, new ValidationResult(validationStatus, null));
+        }
+        STATUS_RESULTS = Collections.unmodifiableMap(statusResults);
+    }
+
+    public static final ValidationResult VALID = of(ValidationStatus.VALID);
+    public static final ValidationResult MALFORMED_TOKEN = error(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + "malformed token");
+    public static final ValidationResult MISSING_PUBLIC_KEY = error(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + "missing public key claim");
+    public static final ValidationResult INVALID_PUBLIC_KEY = error(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + "invalid public key");
+    public static final ValidationResult UNSUPPORTED_ALGORITHM = error("Token signature algorithm is not the required " + SecurityConstants.JWT_SIGNATURE_ALGORITHM_NAME);
+    public static final ValidationResult UNKNOWN_TOKEN_TYPE = error(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + "unknown token type");
+
+    private final ValidationStatus status;
+    private final String message;
+
+    private ValidationResult(ValidationStatus status, String message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * @param validationStatus the validation resolved to
+     * @return the preallocated result of the status
+     */
+    public static ValidationResult of(ValidationStatus validationStatus) {
+        return STATUS_RESULTS.get(validationStatus);
+    }
+
+    /**
+     * @param message describing why the input couldn't be validated
+     * @return error result
+     */
+    public static ValidationResult error(String message) {
+        return new ValidationResult(ValidationStatus.UNKNOWN, message);
+    }
+
+    /**
+     * @return true if the validation passed
+     */
+    public boolean isValid() {
+        return status == ValidationStatus.VALID;
+    }
+
+    /**
+     * @return true if the input couldn't be validated at all
+     */
+    public boolean isError() {
+        return message != null;
+    }
+
+    /**
+     * @return status the validation resolved to, {@link ValidationStatus#UNKNOWN} for errors
+     */
+    public ValidationStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return description of the error or null if the result is not an error
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Bridges the result to the throwing APIs
+     *
+     * @return status the validation resolved to
+     * @throws ValidationException if the result is an error
+     */
+    public ValidationStatus getStatusOrThrow() throws ValidationException {
+        if (message != null)
+            throw new ValidationException(message);
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return message == null ? status.toString() : status + ": " + message;
+    }
+}
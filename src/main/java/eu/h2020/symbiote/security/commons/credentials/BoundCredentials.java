@@ -3,8 +3,8 @@ package eu.h2020.symbiote.security.commons.credentials;
 import eu.h2020.symbiote.security.commons.Token;
 import eu.h2020.symbiote.security.communication.payloads.AAM;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Credentials bound with a particular AAM
@@ -18,7 +18,7 @@ public class BoundCredentials {
     /**
      * Map of foreign tokens that were acquired using this homeToken
      */
-    public Map<AAM, Token> foreignTokens = new HashMap<>();
+    public volatile Map<AAM, Token> foreignTokens = new ConcurrentHashMap<>();
 
     public BoundCredentials(HomeCredentials homeCredentials) {
         this.homeCredentials = homeCredentials;
@@ -35,7 +35,7 @@ public class HomeCredentials {
     /**
      * token acquired from your home AAM
      */
-    public Token homeToken = null;
+    public volatile Token homeToken = null;
 
     public HomeCredentials(AAM homeAAM, String username, String clientIdentifier, Certificate certificate, PrivateKey
             privateKey) {
@@ -0,0 +1,57 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import java.util.Arrays;
+
+/**
+ * Base64url (RFC 4648 §5) decoder working directly on a range of the compact JWS characters, so that no intermediate
+ * substrings or byte copies of the token are made.
+ */
+final class Base64Url {
+
+    private static final byte[] DECODING_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODING_TABLE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODING_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private Base64Url() {
+    }
+
+    /**
+     * @param source    containing the encoded data
+     * @param fromIndex first encoded character (inclusive)
+     * @param toIndex   end of the encoded characters (exclusive), trailing padding is accepted
+     * @return decoded bytes
+     * @throws IllegalArgumentException if the range is not valid base64url
+     */
+    static byte[] decode(CharSequence source, int fromIndex, int toIndex) {
+        // padding is not used in JWS but tolerated
+        while (toIndex > fromIndex && source.charAt(toIndex - 1) == '=')
+            toIndex--;
+        int length = toIndex - fromIndex;
+        if (length % 4 == 1)
+            throw new IllegalArgumentException("Invalid base64url length");
+
+        byte[] decoded = new byte[length * 3 / 4];
+        int position = 0;
+        int buffer = 0;
+        int bufferedBits = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            char c = source.charAt(i);
+            int value = c < 128 ? DECODING_TABLE[c] : -1;
+            if (value < 0)
+                throw new IllegalArgumentException("Illegal base64url character: " + c);
+            buffer = (buffer << 6) | value;
+            bufferedBits += 6;
+            if (bufferedBits >= 8) {
+                bufferedBits -= 8;
+                decoded[position++] = (byte) (buffer >> bufferedBits);
+            }
+        }
+        return decoded;
+    }
+}
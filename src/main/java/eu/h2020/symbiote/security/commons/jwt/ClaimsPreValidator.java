@@ -0,0 +1,114 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.Coupon;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.ValidationResult;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks that can be decided from the decoded claims alone and are run before any signature verification, so that
+ * floods of expired, foreign or otherwise bogus tokens don't cost ECDSA operations.
+ * <p>
+ * The checks are ordered from the cheapest: structure, algorithm, expiration/issue time, token type and issuer.
+ * Each rejection is counted by the {@link ValidationStatus} it resulted in, error results (reported as
+ * {@link ValidationException} by the throwing methods) are counted as {@link ValidationStatus#UNKNOWN}.
+ */
+final class ClaimsPreValidator {
+
+    private static final Set<String> KNOWN_TOKEN_TYPES;
+    private static final Map<ValidationStatus, LongAdder> rejectionsCounts;
+
+    static {
+        Set<String> knownTokenTypes = new HashSet<>();
+        for (Token.Type type : Token.Type.values()) {
+            knownTokenTypes.add(type.toString());
+        }
+        for (Coupon.Type type : Coupon.Type.values()) {
+            knownTokenTypes.add(type.toString());
+        }
+        KNOWN_TOKEN_TYPES = Collections.unmodifiableSet(knownTokenTypes);
+
+        Map<ValidationStatus, LongAdder> counts = new EnumMap<>(ValidationStatus.class);
+        for (ValidationStatus validationStatus : ValidationStatus.values()) {
+            counts.put(validationStatus, new LongAdder());
+        }
+        rejectionsCounts = Collections.unmodifiableMap(counts);
+    }
+
+    private static volatile Set<String> trustedIssuers = null;
+
+    private ClaimsPreValidator() {
+    }
+
+    /**
+     * @param jwtClaims         decoded claims of the token
+     * @param issuerKeyRequired true if the token is to be verified with the key from its IPK claim
+     * @return {@link ValidationResult#VALID} if the token should proceed to the signature verification, the
+     * reason it was rejected or an error if the token is not a symbIoTe token that could be verified at all
+     */
+    static ValidationResult check(JWTClaims jwtClaims, boolean issuerKeyRequired) {
+        // structure
+        if (issuerKeyRequired && jwtClaims.getIpk() == null)
+            return reject(ValidationResult.MISSING_PUBLIC_KEY);
+
+        // algorithm
+        if (!SecurityConstants.JWT_SIGNATURE_ALGORITHM_NAME.equals(jwtClaims.getAlg()))
+            return reject(ValidationResult.UNSUPPORTED_ALGORITHM);
+
+        // expiration and issue time
+        Long exp = jwtClaims.getExp();
+        if (exp != null && (exp < System.currentTimeMillis() || jwtClaims.getIat() > exp))
+            return reject(ValidationResult.of(ValidationStatus.EXPIRED_TOKEN));
+
+        // token type, challenges and other service JWS don't carry any
+        String ttyp = jwtClaims.getTtyp();
+        if (ttyp != null && !KNOWN_TOKEN_TYPES.contains(ttyp))
+            return reject(ValidationResult.UNKNOWN_TOKEN_TYPE);
+
+        // issuer
+        Set<String> issuers = trustedIssuers;
+        if (issuers != null && !issuers.contains(jwtClaims.getIss()))
+            return reject(ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN));
+
+        return ValidationResult.VALID;
+    }
+
+    /**
+     * @param jwtClaims         decoded claims of the token
+     * @param issuerKeyRequired true if the token is to be verified with the key from its IPK claim
+     * @return {@link ValidationStatus#VALID} if the token should proceed to the signature verification or the
+     * reason it was rejected
+     * @throws ValidationException if the token is not a symbIoTe token that could be verified at all
+     */
+    static ValidationStatus validate(JWTClaims jwtClaims, boolean issuerKeyRequired) throws ValidationException {
+        return check(jwtClaims, issuerKeyRequired).getStatusOrThrow();
+    }
+
+    /**
+     * @param issuers whose tokens are accepted for the verification, null accepts all
+     */
+    static void setTrustedIssuers(Collection<String> issuers) {
+        trustedIssuers = issuers == null ? null : Collections.unmodifiableSet(new HashSet<>(issuers));
+    }
+
+    static long getRejectionsCount(ValidationStatus validationStatus) {
+        return rejectionsCounts.get(validationStatus).sum();
+    }
+
+    static void resetRejectionsCounts() {
+        for (LongAdder count : rejectionsCounts.values()) {
+            count.reset();
+        }
+    }
+
+    private static ValidationResult reject(ValidationResult validationResult) {
+        // errors have the UNKNOWN status
+        rejectionsCounts.get(validationResult.getStatus()).increment();
+        return validationResult;
+    }
+}
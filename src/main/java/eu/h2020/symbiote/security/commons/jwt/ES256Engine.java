@@ -0,0 +1,262 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+
+import java.security.*;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * ES256 signing and verification working directly on the JWS compact serialization.
+ * <p>
+ * The per-thread {@link Signature} from {@link ECDSAHelper} is reused and the conversion between the JOSE (R||S) and
+ * the DER signature formats is done in place, without the parser/builder objects and claims maps of jjwt, which stays
+ * the reference implementation these methods are tested against.
+ */
+public final class ES256Engine {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    // base64url of {"alg":"ES256"}
+    private static final String ENCODED_HEADER = "eyJhbGciOiJFUzI1NiJ9";
+    // P-256 R and S are 32 bytes each
+    private static final int COMPONENT_LENGTH = 32;
+    private static final int RAW_SIGNATURE_LENGTH = 2 * COMPONENT_LENGTH;
+    // SEQUENCE of two INTEGERs, each possibly prefixed with a zero byte
+    private static final int MAX_DER_SIGNATURE_LENGTH = 2 + 2 * (2 + COMPONENT_LENGTH + 1);
+
+    private static final ObjectWriter CLAIMS_WRITER = new ObjectMapper().writer();
+    private static final Base64.Encoder BASE64_URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    // the signing input is fed to the signature in chunks of this size
+    private static final int INPUT_CHUNK_LENGTH = 512;
+    private static final ThreadLocal<byte[]> derSignatureBuffers = ThreadLocal.withInitial(() -> new byte[MAX_DER_SIGNATURE_LENGTH]);
+    private static final ThreadLocal<byte[]> inputBuffers = ThreadLocal.withInitial(() -> new byte[INPUT_CHUNK_LENGTH]);
+
+    private ES256Engine() {
+    }
+
+    /**
+     * @param claims     of the payload, dates (iat, exp) are expected in seconds
+     * @param privateKey to sign the JWS with
+     * @return compact JWS
+     * @throws IllegalArgumentException if the claims can't be serialized or the key is not an EC private key
+     */
+    public static String sign(Map<String, ?> claims, PrivateKey privateKey) {
+        StringBuilder jws = new StringBuilder(256);
+        try {
+            jws.append(ENCODED_HEADER)
+                    .append('.')
+                    .append(BASE64_URL_ENCODER.encodeToString(CLAIMS_WRITER.writeValueAsBytes(claims)));
+
+            Signature signature = ECDSAHelper.getSignature(SIGNATURE_ALGORITHM);
+            signature.initSign(privateKey);
+            updateWithAscii(signature, jws, jws.length());
+            byte[] rawSignature = new byte[RAW_SIGNATURE_LENGTH];
+            derToRaw(signature.sign(), rawSignature);
+            return jws.append('.')
+                    .append(BASE64_URL_ENCODER.encodeToString(rawSignature))
+                    .toString();
+        } catch (JsonProcessingException | InvalidKeyException e) {
+            throw new IllegalArgumentException(e);
+        } catch (NoSuchAlgorithmException | SignatureException e) {
+            // the provider always supports ECDSA and the signature was initialized
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Verifies only the signature, the claims (e.g. the expiration) are not checked
+     *
+     * @param jwtString compact JWS
+     * @param publicKey to verify the signature with
+     * @return true if the JWS is ES256 signed with the key matching the given one
+     * @throws InvalidKeyException if the key is not an EC public key
+     */
+    public static boolean verify(String jwtString, PublicKey publicKey) throws InvalidKeyException {
+        int payloadEnd = signingInputEnd(jwtString);
+        byte[] rawSignature = decodeRawSignature(jwtString, payloadEnd);
+        if (rawSignature == null)
+            return false;
+
+        try {
+            Signature signature = ECDSAHelper.getSignature(SIGNATURE_ALGORITHM);
+            signature.initVerify(publicKey);
+            if (!updateWithAscii(signature, jwtString, payloadEnd))
+                return false;
+            byte[] derSignature = derSignatureBuffers.get();
+            int derSignatureLength = rawToDer(rawSignature, derSignature);
+            return signature.verify(derSignature, 0, derSignatureLength);
+        } catch (SignatureException e) {
+            // signature not matching the expected encoding
+            return false;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes the payload claims of an ES256 JWS, the signature is not checked (see {@link #verify(String, PublicKey)})
+     *
+     * @param jwtString compact JWS
+     * @return all the payload claims
+     * @throws MalformedJWTException if the JWS is not properly formed or its header doesn't declare ES256
+     */
+    public static Map<String, Object> decodeClaims(String jwtString) throws MalformedJWTException {
+        int headerEnd = jwtString.indexOf('.');
+        int payloadEnd = signingInputEnd(jwtString);
+        if (payloadEnd < 0)
+            throw new MalformedJWTException();
+        try {
+            if (!SecurityConstants.JWT_SIGNATURE_ALGORITHM_NAME.equals(
+                    JWTClaimsReader.readClaim(Base64Url.decode(jwtString, 0, headerEnd), "alg")))
+                throw new MalformedJWTException();
+            return JWTClaimsReader.readClaimsMap(Base64Url.decode(jwtString, headerEnd + 1, payloadEnd));
+        } catch (IllegalArgumentException e) {
+            throw new MalformedJWTException(e);
+        }
+    }
+
+    /**
+     * Feeds the characters to the signature without copying the whole string, a compact JWS holds only ASCII
+     *
+     * @return false if a non ASCII character was found, the JWS is then malformed
+     */
+    private static boolean updateWithAscii(Signature signature, CharSequence input, int end) throws SignatureException {
+        byte[] buffer = inputBuffers.get();
+        int position = 0;
+        while (position < end) {
+            int length = toAscii(input, position, end, buffer);
+            if (length < 0)
+                return false;
+            signature.update(buffer, 0, length);
+            position += length;
+        }
+        return true;
+    }
+
+    /**
+     * Feeds the characters to the digest without copying the whole string, a compact JWS holds only ASCII
+     *
+     * @return false if a non ASCII character was found, the JWS is then malformed
+     */
+    static boolean updateWithAscii(MessageDigest messageDigest, CharSequence input, int end) {
+        byte[] buffer = inputBuffers.get();
+        int position = 0;
+        while (position < end) {
+            int length = toAscii(input, position, end, buffer);
+            if (length < 0)
+                return false;
+            messageDigest.update(buffer, 0, length);
+            position += length;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of the characters from the position on written to the buffer, as many as fit, or -1 if a non
+     * ASCII character was found
+     */
+    private static int toAscii(CharSequence input, int position, int end, byte[] buffer) {
+        int length = Math.min(buffer.length, end - position);
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(position + i);
+            if (c > 0x7f)
+                return -1;
+            buffer[i] = (byte) c;
+        }
+        return length;
+    }
+
+    /**
+     * @param jwtString compact JWS
+     * @return index of the dot preceding the signature or -1 if there is none
+     */
+    static int signingInputEnd(String jwtString) {
+        int headerEnd = jwtString.indexOf('.');
+        return headerEnd < 0 ? -1 : jwtString.indexOf('.', headerEnd + 1);
+    }
+
+    /**
+     * @param jwtString  compact JWS
+     * @param payloadEnd index of the dot preceding the signature
+     * @return JOSE signature (R||S) or null if it is missing or malformed
+     */
+    static byte[] decodeRawSignature(String jwtString, int payloadEnd) {
+        if (payloadEnd < 0)
+            return null;
+        byte[] rawSignature;
+        try {
+            rawSignature = Base64Url.decode(jwtString, payloadEnd + 1, jwtString.length());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return rawSignature.length == RAW_SIGNATURE_LENGTH ? rawSignature : null;
+    }
+
+    /**
+     * @param raw JOSE signature (R||S)
+     * @param der buffer of at least {@link #MAX_DER_SIGNATURE_LENGTH} bytes
+     * @return length of the DER encoded signature written to the buffer
+     */
+    static int rawToDer(byte[] raw, byte[] der) {
+        int position = 2;
+        position = writeInteger(raw, 0, der, position);
+        position = writeInteger(raw, COMPONENT_LENGTH, der, position);
+        der[0] = 0x30;
+        der[1] = (byte) (position - 2);
+        return position;
+    }
+
+    private static int writeInteger(byte[] raw, int offset, byte[] der, int position) {
+        int start = offset;
+        int end = offset + COMPONENT_LENGTH;
+        // minimal encoding, but zero still takes a byte
+        while (start < end - 1 && raw[start] == 0)
+            start++;
+        int padding = (raw[start] & 0x80) != 0 ? 1 : 0;
+        int length = end - start;
+        der[position++] = 0x02;
+        der[position++] = (byte) (length + padding);
+        if (padding == 1)
+            der[position++] = 0;
+        System.arraycopy(raw, start, der, position, length);
+        return position + length;
+    }
+
+    /**
+     * @param der DER encoded signature
+     * @param raw buffer of {@link #RAW_SIGNATURE_LENGTH} bytes for the JOSE signature (R||S)
+     * @throws SignatureException if the DER signature is malformed
+     */
+    static void derToRaw(byte[] der, byte[] raw) throws SignatureException {
+        if (der.length < 8 || der[0] != 0x30)
+            throw new SignatureException("Invalid DER signature");
+        // the sequence length might be in the long form
+        int position = (der[1] & 0x80) != 0 ? 2 + (der[1] & 0x7f) : 2;
+        position = readInteger(der, position, raw, 0);
+        readInteger(der, position, raw, COMPONENT_LENGTH);
+    }
+
+    private static int readInteger(byte[] der, int position, byte[] raw, int offset) throws SignatureException {
+        if (position + 2 > der.length || der[position] != 0x02)
+            throw new SignatureException("Invalid DER signature");
+        int length = der[position + 1];
+        int start = position + 2;
+        int end = start + length;
+        if (length <= 0 || end > der.length)
+            throw new SignatureException("Invalid DER signature");
+        while (start < end && der[start] == 0)
+            start++;
+        int significantLength = end - start;
+        if (significantLength > COMPONENT_LENGTH)
+            throw new SignatureException("Invalid DER signature");
+        for (int i = offset; i < offset + COMPONENT_LENGTH - significantLength; i++)
+            raw[i] = 0;
+        System.arraycopy(der, start, raw, offset + COMPONENT_LENGTH - significantLength, significantLength);
+        return end;
+    }
+}
@@ -0,0 +1,180 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.communication.payloads.AAM;
+import eu.h2020.symbiote.security.communication.payloads.AvailableAAMsCollection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.interfaces.ECPublicKey;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Optional registry of well known token issuers' (AAMs') keys, for which the ECDSA verification tables are
+ * precomputed. Tokens verified with a registered key use the precomputed verifier, all others the generic one.
+ * <p>
+ * The registry is bounded. {@link #update(Map)}, which the {@link eu.h2020.symbiote.security.handler.SecurityHandler}
+ * calls when the available AAMs it fetched changed, registers their keys and, only if the registry would otherwise
+ * overflow, makes room by dropping the keys none of them uses (e.g. rotated ones) first. The registry is shared by the
+ * whole JVM, so the keys registered explicitly or from the AAMs known to other handlers stay as long as there is room.
+ */
+public class IssuerKeysRegistry {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 64;
+
+    private static final Log log = LogFactory.getLog(IssuerKeysRegistry.class);
+    private static final ConcurrentMap<ByteBuffer, PrecomputedES256Verifier> verifiers = new ConcurrentHashMap<>();
+    private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private IssuerKeysRegistry() {
+    }
+
+    /**
+     * @param publicKey of the issuer
+     * @return true if the key was registered, only P-256 EC keys are supported
+     */
+    public static boolean register(PublicKey publicKey) {
+        if (!(publicKey instanceof ECPublicKey))
+            return false;
+        ByteBuffer encodedKey = ByteBuffer.wrap(publicKey.getEncoded());
+        if (verifiers.containsKey(encodedKey))
+            return true;
+        try {
+            PrecomputedES256Verifier verifier = PrecomputedES256Verifier.create((ECPublicKey) publicKey);
+            // making room for the new key, which one goes doesn't matter much as the set of issuers is small and stable
+            if (verifiers.size() >= maximumSize) {
+                Iterator<ByteBuffer> iterator = verifiers.keySet().iterator();
+                if (iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            verifiers.putIfAbsent(encodedKey, verifier);
+            return true;
+        } catch (IllegalArgumentException e) {
+            log.debug("Not registering the issuer key: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Registers the keys of all the AAMs' certificates
+     *
+     * @param availableAAMs fetched from an AAM
+     * @return number of registered keys
+     */
+    public static int registerAll(AvailableAAMsCollection availableAAMs) {
+        return registerAll(availableAAMs.getAvailableAAMs());
+    }
+
+    /**
+     * Registers the keys of all the AAMs' certificates
+     *
+     * @param availableAAMs instance identifiers to AAMs
+     * @return number of registered keys
+     */
+    public static int registerAll(Map<String, AAM> availableAAMs) {
+        int registered = 0;
+        for (AAM aam : availableAAMs.values()) {
+            try {
+                if (aam.getAamCACertificate() != null
+                        && !aam.getAamCACertificate().getCertificateString().isEmpty()
+                        && register(aam.getAamCACertificate().getPublicKey()))
+                    registered++;
+            } catch (CertificateException e) {
+                log.error("Couldn't read the certificate of " + aam.getAamInstanceId() + ": " + e.getMessage());
+            }
+        }
+        return registered;
+    }
+
+    /**
+     * Registers the keys of all the AAMs' certificates, making room by unregistering the keys none of them uses first
+     *
+     * @param availableAAMs fetched from an AAM
+     * @return number of registered keys
+     */
+    public static int update(AvailableAAMsCollection availableAAMs) {
+        return update(availableAAMs.getAvailableAAMs());
+    }
+
+    /**
+     * Registers the keys of all the AAMs' certificates, making room by unregistering the keys none of them uses first
+     *
+     * @param availableAAMs instance identifiers to AAMs
+     * @return number of registered keys
+     */
+    public static synchronized int update(Map<String, AAM> availableAAMs) {
+        Set<ByteBuffer> availableKeys = new HashSet<>();
+        for (AAM aam : availableAAMs.values()) {
+            try {
+                if (aam.getAamCACertificate() != null
+                        && !aam.getAamCACertificate().getCertificateString().isEmpty())
+                    availableKeys.add(ByteBuffer.wrap(aam.getAamCACertificate().getPublicKey().getEncoded()));
+            } catch (CertificateException e) {
+                log.error("Couldn't read the certificate of " + aam.getAamInstanceId() + ": " + e.getMessage());
+            }
+        }
+        int excess = verifiers.size() - maximumSize;
+        for (ByteBuffer availableKey : availableKeys) {
+            if (!verifiers.containsKey(availableKey))
+                excess++;
+        }
+        Iterator<ByteBuffer> iterator = verifiers.keySet().iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            if (!availableKeys.contains(iterator.next())) {
+                iterator.remove();
+                excess--;
+            }
+        }
+        return registerAll(availableAAMs);
+    }
+
+    /**
+     * @param size maximum number of registered keys
+     */
+    public static void setMaximumSize(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Registry size must be positive");
+        maximumSize = size;
+    }
+
+    /**
+     * @param publicKey of the issuer
+     * @return true if the key was registered and got removed
+     */
+    public static boolean unregister(PublicKey publicKey) {
+        return verifiers.remove(ByteBuffer.wrap(publicKey.getEncoded())) != null;
+    }
+
+    /**
+     * @return number of registered keys
+     */
+    public static int size() {
+        return verifiers.size();
+    }
+
+    /**
+     * drops all the registered keys
+     */
+    public static void clear() {
+        verifiers.clear();
+    }
+
+    /**
+     * @param publicKey of the issuer
+     * @return the precomputed verifier or null if the key is not registered
+     */
+    static PrecomputedES256Verifier getVerifier(PublicKey publicKey) {
+        if (verifiers.isEmpty())
+            return null;
+        return verifiers.get(ByteBuffer.wrap(publicKey.getEncoded()));
+    }
+}
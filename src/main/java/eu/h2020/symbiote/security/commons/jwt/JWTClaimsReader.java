@@ -0,0 +1,173 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Streams the header and payload of a compact JWS straight into {@link JWTClaims}.
+ * <p>
+ * The segments are base64url decoded in place from the token string and read token by token with a shared
+ * {@link JsonFactory}, so neither the split parts nor intermediate claims maps are created. SymbIoTe attributes are
+ * collected in the same pass.
+ */
+final class JWTClaimsReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectReader MAP_READER = new ObjectMapper().readerFor(new TypeReference<Map<String, Object>>() {
+    });
+
+    private JWTClaimsReader() {
+    }
+
+    /**
+     * Decodes the header and payload of the given JWS into the claims
+     *
+     * @param jwtString compacted signed token string
+     * @param jwtClaims to be filled
+     * @return decoded payload segment (JSON)
+     * @throws MalformedJWTException if the string is not a properly formed symbIoTe JWS
+     */
+    static byte[] read(String jwtString, JWTClaims jwtClaims) throws MalformedJWTException {
+        int headerEnd = jwtString.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : jwtString.indexOf('.', headerEnd + 1);
+        // the signature part must not be empty
+        if (payloadEnd < 0 || payloadEnd == jwtString.length() - 1)
+            throw new MalformedJWTException();
+
+        try {
+            readHeader(Base64Url.decode(jwtString, 0, headerEnd), jwtClaims);
+            byte[] payload = Base64Url.decode(jwtString, headerEnd + 1, payloadEnd);
+            readPayload(payload, jwtClaims);
+            return payload;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MalformedJWTException(e);
+        }
+    }
+
+    /**
+     * @param payload decoded payload segment
+     * @return all the payload claims
+     * @throws MalformedJWTException if the payload is not a JSON object
+     */
+    static Map<String, Object> readClaimsMap(byte[] payload) throws MalformedJWTException {
+        try {
+            return MAP_READER.readValue(payload);
+        } catch (IOException e) {
+            throw new MalformedJWTException(e);
+        }
+    }
+
+    /**
+     * Streams the payload only up to the given claim, without building the claims map
+     *
+     * @param payload decoded payload segment
+     * @param name    of the claim
+     * @return value of the claim as text or null if the payload doesn't have it
+     * @throws MalformedJWTException if the payload is not a flat JSON object
+     */
+    static String readClaim(byte[] payload, String name) throws MalformedJWTException {
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean found = name.equals(parser.getCurrentName());
+                String value = nextValue(parser);
+                if (found)
+                    return value;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new MalformedJWTException(e);
+        }
+    }
+
+    private static void readHeader(byte[] header, JWTClaims jwtClaims) throws IOException, MalformedJWTException {
+        try (JsonParser parser = JSON_FACTORY.createParser(header)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                String value = nextValue(parser);
+                if ("alg".equals(name))
+                    jwtClaims.setAlg(value);
+            }
+        }
+    }
+
+    private static void readPayload(byte[] payload, JWTClaims jwtClaims) throws IOException, MalformedJWTException {
+        boolean iatFound = false;
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                String value = nextValue(parser);
+                switch (name) {
+                    case "jti":
+                        jwtClaims.setJti(value);
+                        break;
+                    case "iss":
+                        jwtClaims.setIss(value);
+                        break;
+                    case "sub":
+                        jwtClaims.setSub(value);
+                        break;
+                    case "iat":
+                        jwtClaims.setIat(secondsToMillis(value));
+                        iatFound = true;
+                        break;
+                    case "exp":
+                        jwtClaims.setExp(secondsToMillis(value));
+                        break;
+                    case "val":
+                        jwtClaims.setVal(value);
+                        break;
+                    case "ipk":
+                        jwtClaims.setIpk(value);
+                        break;
+                    case "spk":
+                        jwtClaims.setSpk(value);
+                        break;
+                    case "ttyp":
+                        jwtClaims.setTtyp(value);
+                        break;
+                    default:
+                        if (name.startsWith(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX))
+                            jwtClaims.getAtt().put(name.substring(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX.length()), value);
+                }
+            }
+        }
+        // issue time is mandatory
+        if (!iatFound)
+            throw new MalformedJWTException();
+    }
+
+    private static void startObject(JsonParser parser) throws IOException, MalformedJWTException {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new MalformedJWTException();
+    }
+
+    private static String nextValue(JsonParser parser) throws IOException, MalformedJWTException {
+        JsonToken token = parser.nextToken();
+        if (token == null)
+            throw new MalformedJWTException();
+        // symbIoTe claims are flat, nested structures are not allowed
+        if (token.isStructStart())
+            throw new MalformedJWTException();
+        return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    private static Long secondsToMillis(String value) throws MalformedJWTException {
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            throw new MalformedJWTException(e);
+        }
+    }
+}
@@ -1,24 +1,16 @@
 package eu.h2020.symbiote.security.commons.jwt;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.ValidationResult;
 import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
 import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
 import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
-import eu.h2020.symbiote.security.helpers.ECDSAHelper;
-import io.jsonwebtoken.*;
+import io.jsonwebtoken.Claims;
 
-import java.io.IOException;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * Set of functions for generating JSON Web Tokens (JWT).
@@ -30,37 +22,161 @@ import java.util.Set;
  */
 public class JWTEngine {
 
+    private static volatile VerifiedTokensCache verifiedTokensCache = null;
+    private static volatile ForkJoinPool validationPool = ForkJoinPool.commonPool();
+
     private JWTEngine() {
     }
 
     /**
-     * Retrieves claims from given jwt String
+     * Enables caching of successfully verified tokens, so that repeated validation of the same token string
+     * skips the signature verification until the token expires. Disabled by default.
      *
-     * @param jwtString to get claims from
-     * @return claims deserialized from the jwt
-     * @throws ValidationException on parse exception.
+     * @param maximumSize of the cache, least recently used entries are evicted when it is exceeded
      */
-    public static Claims getClaims(String jwtString) throws ValidationException {
+    public static void enableVerifiedTokensCache(int maximumSize) {
+        verifiedTokensCache = new VerifiedTokensCache(maximumSize);
+    }
+
+    /**
+     * Disables and drops the verified tokens cache
+     */
+    public static void disableVerifiedTokensCache() {
+        verifiedTokensCache = null;
+    }
+
+    /**
+     * @return the verified tokens cache (e.g. to read its statistics) or null if caching is disabled
+     */
+    public static VerifiedTokensCache getVerifiedTokensCache() {
+        return verifiedTokensCache;
+    }
+
+    /**
+     * Restricts the tokens that are verified to the ones issued by the given issuers, tokens of other issuers are
+     * rejected as {@link ValidationStatus#INVALID_TRUST_CHAIN} before their signature is checked.
+     *
+     * @param issuers trusted issuers (iss claim), null trusts all (default)
+     */
+    public static void setTrustedIssuers(Collection<String> issuers) {
+        ClaimsPreValidator.setTrustedIssuers(issuers);
+    }
+
+    /**
+     * @param validationStatus reason of the rejection
+     * @return number of tokens rejected for the given reason from their claims alone, without verifying their
+     * signature. Tokens that couldn't be validated at all (e.g. wrong algorithm) are counted as
+     * {@link ValidationStatus#UNKNOWN}
+     */
+    public static long getEarlyRejectionsCount(ValidationStatus validationStatus) {
+        return ClaimsPreValidator.getRejectionsCount(validationStatus);
+    }
+
+    /**
+     * Resets the early rejections counters
+     */
+    public static void resetEarlyRejectionsCounts() {
+        ClaimsPreValidator.resetRejectionsCounts();
+    }
+
+    /**
+     * @param pool used by {@link #validateTokens(Collection, Function)} to verify the tokens in parallel, the common
+     *             pool is used by default
+     */
+    public static void setValidationPool(ForkJoinPool pool) {
+        validationPool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Validates a set of tokens (e.g. all the credentials of a security request) in parallel. Identical token strings
+     * are verified only once.
+     *
+     * @param jwtStrings        tokens to be validated
+     * @param issuerKeyResolver provides the public key of the token issuer (iss claim), when null the key from the
+     *                          token's IPK claim is used
+     * @return validation status of each distinct token, in the iteration order of the given collection. Tokens that
+     * couldn't be validated at all are marked {@link ValidationStatus#UNKNOWN} and tokens of issuers unknown to the
+     * resolver {@link ValidationStatus#INVALID_TRUST_CHAIN}
+     */
+    public static Map<String, ValidationStatus> validateTokens(Collection<String> jwtStrings,
+                                                               Function<String, PublicKey> issuerKeyResolver) {
+        String[] tokens = new LinkedHashSet<>(jwtStrings).toArray(new String[0]);
+        ValidationStatus[] validationStatuses = new ValidationStatus[tokens.length];
+        if (tokens.length == 1) {
+            validationStatuses[0] = validateToken(tokens[0], issuerKeyResolver);
+        } else if (tokens.length > 1) {
+            // parallel streams run in the pool the task was submitted to
+            validationPool.submit(() -> IntStream.range(0, tokens.length)
+                    .parallel()
+                    .forEach(i -> validationStatuses[i] = validateToken(tokens[i], issuerKeyResolver)))
+                    .join();
+        }
+
+        Map<String, ValidationStatus> result = new LinkedHashMap<>();
+        for (int i = 0; i < tokens.length; i++) {
+            result.put(tokens[i], validationStatuses[i]);
+        }
+        return result;
+    }
+
+    private static ValidationStatus validateToken(String jwtString, Function<String, PublicKey> issuerKeyResolver) {
         try {
-            ECDSAHelper.enableECDSAProvider();
-            JWTClaims claims = getClaimsFromToken(jwtString);
-            //Convert IPK claim to publicKey for validation
-            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(Base64.getDecoder().decode(claims.getIpk()));
-            KeyFactory keyFactory = KeyFactory.getInstance("EC");
-            PublicKey publicKey = keyFactory.generatePublic(keySpec);
-
-            // retrieve the claims
-            return Jwts.parser().setSigningKey(publicKey).parseClaimsJws(jwtString).getBody();
-            // validate the jwt using the claims parser
-        } catch (InvalidKeySpecException | MalformedJWTException | NoSuchAlgorithmException e) {
-            throw new ValidationException(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + e.getMessage(), e);
+            if (issuerKeyResolver == null)
+                return validate(jwtString).getStatus();
+            ParsedJws parsedJws = ParsedJws.decode(jwtString);
+            PublicKey issuerPublicKey = issuerKeyResolver.apply(parsedJws.getJwtClaims().getIss());
+            if (issuerPublicKey == null)
+                return ValidationStatus.INVALID_TRUST_CHAIN;
+            return parsedJws.getValidationResult(issuerPublicKey).getStatus();
+        } catch (MalformedJWTException | RuntimeException e) {
+            return ValidationStatus.UNKNOWN;
         }
     }
 
-    private static void verifyTokenSignatureAlgorithm(String jwtAlgorithmClaim) throws ValidationException {
-        // checking that the token is signed using our desired algorithm
-        if (!jwtAlgorithmClaim.equals(SecurityConstants.JWT_SIGNATURE_ALGORITHM_NAME))
-            throw new ValidationException("Token signature algorithm was " + jwtAlgorithmClaim + " instead of required " + SecurityConstants.JWT_SIGNATURE_ALGORITHM_NAME);
+    /**
+     * Validates the given jwt string without throwing on invalid input
+     *
+     * @param jwtString JWT to be validated
+     * @return validation result, an error if the string is not a properly formed symbIoTe JWS or couldn't be
+     * validated at all
+     */
+    public static ValidationResult validate(String jwtString) {
+        try {
+            return ParsedJws.decode(jwtString).getValidationResult();
+        } catch (MalformedJWTException e) {
+            return ValidationResult.MALFORMED_TOKEN;
+        }
+    }
+
+    /**
+     * Validates the jwt string using a given public key without throwing on invalid input
+     *
+     * @param jwtString JSON Web Token to be validated
+     * @param publicKey issuer's public key
+     * @return validation result, an error if the string is not a properly formed symbIoTe JWS or couldn't be
+     * validated at all
+     */
+    public static ValidationResult validate(String jwtString, PublicKey publicKey) {
+        try {
+            return ParsedJws.decode(jwtString).getValidationResult(publicKey);
+        } catch (MalformedJWTException e) {
+            return ValidationResult.MALFORMED_TOKEN;
+        }
+    }
+
+    /**
+     * Retrieves claims from given jwt String
+     *
+     * @param jwtString to get claims from
+     * @return claims deserialized from the jwt
+     * @throws ValidationException on parse exception or when the jwt is not valid
+     */
+    public static Claims getClaims(String jwtString) throws ValidationException {
+        ParsedJws parsedJws = ParsedJws.parse(jwtString);
+        ValidationStatus validationStatus = parsedJws.getValidationStatus();
+        if (validationStatus != ValidationStatus.VALID)
+            throw new ValidationException(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + validationStatus);
+        return parsedJws.getClaims();
     }
 
     /**
@@ -73,23 +189,7 @@ public class JWTEngine {
      */
     public static ValidationStatus validateTokenString(String jwtString, PublicKey publicKey) throws
             ValidationException {
-        try {
-            ECDSAHelper.enableECDSAProvider();
-
-            JWTClaims claims = getClaimsFromToken(jwtString);
-            verifyTokenSignatureAlgorithm(claims.getAlg());
-
-            Jwts.parser()
-                    .setSigningKey(publicKey)
-                    .parseClaimsJws(jwtString);
-            return ValidationStatus.VALID;
-        } catch (ExpiredJwtException e) {
-            return ValidationStatus.EXPIRED_TOKEN;
-        } catch (SignatureException e) {
-            return ValidationStatus.INVALID_TRUST_CHAIN;
-        } catch (UnsupportedJwtException | MalformedJwtException | IllegalArgumentException | MalformedJWTException e) {
-            throw new ValidationException(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + e.getMessage(), e);
-        }
+        return ParsedJws.parse(jwtString).getValidationStatus(publicKey);
     }
 
     /**
@@ -100,65 +200,20 @@ public class JWTEngine {
      * @throws ValidationException on validation error
      */
     public static ValidationStatus validateTokenString(String jwtString) throws ValidationException {
-        try {
-            ECDSAHelper.enableECDSAProvider();
-            JWTClaims claims = getClaimsFromToken(jwtString);
-            verifyTokenSignatureAlgorithm(claims.getAlg());
-
-            //Convert IPK claim to publicKey for validation
-            X509EncodedKeySpec keySpec = new X509EncodedKeySpec(Base64.getDecoder().decode(claims.getIpk()));
-            KeyFactory keyFactory = KeyFactory.getInstance("EC");
-            PublicKey publicKey = keyFactory.generatePublic(keySpec);
-
-            // validate the jwt using the claims parser
-            return validateTokenString(jwtString, publicKey);
-        } catch (InvalidKeySpecException | MalformedJWTException | NoSuchAlgorithmException e) {
-            throw new ValidationException(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + e.getMessage(), e);
-        }
+        return ParsedJws.parse(jwtString).getValidationStatus();
     }
 
+    /**
+     * Extracts the claims from the given jwt string without verifying its signature
+     *
+     * @param jwtString to get claims from
+     * @return claims with symbIoTe attributes separated
+     * @throws MalformedJWTException if the string is not a properly formed symbIoTe JWS
+     */
     public static JWTClaims getClaimsFromToken(String jwtString) throws MalformedJWTException {
-        HashMap<String, Object> retMap = new HashMap<>();
-        ObjectMapper mapper = new ObjectMapper();
-        String[] jwtParts = jwtString.split("\\.");
-        if (jwtParts.length < SecurityConstants.JWT_PARTS_COUNT) {
-            throw new MalformedJWTException();
-        }
-        // fetch header claims
-        try {
-            retMap.putAll(mapper.readValue(new String(Base64.getDecoder().decode(jwtParts[0])), new TypeReference<Map<String, String>>() {
-            }));
-        } catch (IOException e) {
-            throw new MalformedJWTException(e);
-        }
-
-        //Get second part of the JWT
-        String jwtBody = jwtParts[1];
-        String claimsString = new String(Base64.getDecoder().decode(jwtBody));
-
-        Map<String, Object> claimsMap;
-
-        try {
-            claimsMap = mapper.readValue(claimsString, new TypeReference<Map<String, String>>() {
-            });
-
-            Map<String, String> attributes = new HashMap<>();
-            Set<String> jwtKeys = claimsMap.keySet();
-            for (String key : jwtKeys) {
-                Object value = claimsMap.get(key);
-                if (key.startsWith(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX))
-                    attributes.put(key.substring(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX.length()), (String)
-                            value);
-                else
-                    retMap.put(key, value);
-            }
-
-            //Extracting claims from JWT claims map
-            return new JWTClaims(retMap, attributes);
-        } catch (IOException | NumberFormatException e) {
-            throw new MalformedJWTException(e);
-        }
+        JWTClaims jwtClaims = new JWTClaims();
+        JWTClaimsReader.read(jwtString, jwtClaims);
+        return jwtClaims;
     }
 
 }
-
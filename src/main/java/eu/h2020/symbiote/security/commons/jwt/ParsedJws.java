@@ -0,0 +1,301 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.ValidationResult;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+/**
+ * Compact JWS decoded in a single pass, shared by the {@link JWTEngine}, {@link eu.h2020.symbiote.security.commons.Token}
+ * and {@link eu.h2020.symbiote.security.commons.Coupon}.
+ * <p>
+ * The header and payload are decoded once into {@link JWTClaims} (the generic {@link Claims} only on demand), the IPK/SPK claims are converted
+ * to {@link PublicKey}s on first use and the signature verification outcome is remembered, so that asking again
+ * for the status against the same key doesn't repeat the ECDSA verification.
+ */
+public final class ParsedJws {
+
+    private final String jwtString;
+    private final JWTClaims jwtClaims;
+    private final byte[] payload;
+    private volatile Claims claims;
+    private volatile PublicKey issuerPublicKey;
+    private volatile PublicKey subjectPublicKey;
+    private volatile Verification verification;
+
+    private ParsedJws(String jwtString, JWTClaims jwtClaims, byte[] payload) {
+        this.jwtString = jwtString;
+        this.jwtClaims = jwtClaims;
+        this.payload = payload;
+    }
+
+    /**
+     * Decodes the given JWS without verifying its signature
+     *
+     * @param jwtString compacted signed token string
+     * @return decoded JWS
+     * @throws MalformedJWTException if the string is not a properly formed symbIoTe JWS
+     */
+    public static ParsedJws decode(String jwtString) throws MalformedJWTException {
+        JWTClaims jwtClaims = new JWTClaims();
+        byte[] payload = JWTClaimsReader.read(jwtString, jwtClaims);
+        return new ParsedJws(jwtString, jwtClaims, payload);
+    }
+
+    /**
+     * Decodes the given JWS without verifying its signature
+     *
+     * @param jwtString compacted signed token string
+     * @return decoded JWS
+     * @throws ValidationException if the string is not a properly formed symbIoTe JWS
+     */
+    public static ParsedJws parse(String jwtString) throws ValidationException {
+        try {
+            return decode(jwtString);
+        } catch (MalformedJWTException e) {
+            throw new ValidationException(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return outcome of the checks decided from the claims alone (e.g. expiration), without verifying the signature
+     */
+    public ValidationResult getPreValidationResult() {
+        return ClaimsPreValidator.check(jwtClaims, true);
+    }
+
+    /**
+     * @return outcome of the checks decided from the claims alone (e.g. expiration), without verifying the signature
+     * @throws ValidationException if the JWS couldn't be validated at all
+     */
+    public ValidationStatus getPreValidationStatus() throws ValidationException {
+        return getPreValidationResult().getStatusOrThrow();
+    }
+
+    /**
+     * @return validation result of the JWS signed with the key found in its IPK claim, an error if the claim is
+     * missing/malformed or the JWS couldn't be validated
+     */
+    public ValidationResult getValidationResult() {
+        ValidationResult preValidationResult = ClaimsPreValidator.check(jwtClaims, true);
+        if (!preValidationResult.isValid())
+            return preValidationResult;
+        PublicKey publicKey = findIssuerPublicKey();
+        if (publicKey == null)
+            return ValidationResult.INVALID_PUBLIC_KEY;
+        return verify(publicKey);
+    }
+
+    /**
+     * @return validation status of the JWS signed with the key found in its IPK claim
+     * @throws ValidationException if the IPK claim is missing/malformed or the JWS couldn't be validated
+     */
+    public ValidationStatus getValidationStatus() throws ValidationException {
+        return getValidationResult().getStatusOrThrow();
+    }
+
+    /**
+     * Verifies the JWS signature and expiration, the outcome is remembered for the given key. Tokens that can be
+     * rejected from their claims alone are rejected before the signature is checked.
+     *
+     * @param publicKey issuer's public key
+     * @return validation result, an error if the JWS couldn't be validated
+     */
+    public ValidationResult getValidationResult(PublicKey publicKey) {
+        ValidationResult preValidationResult = ClaimsPreValidator.check(jwtClaims, false);
+        if (!preValidationResult.isValid())
+            return preValidationResult;
+        return verify(publicKey);
+    }
+
+    /**
+     * Verifies the JWS signature and expiration, the outcome is remembered for the given key. Tokens that can be
+     * rejected from their claims alone are rejected before the signature is checked.
+     *
+     * @param publicKey issuer's public key
+     * @return validation status
+     * @throws ValidationException on other errors
+     */
+    public ValidationStatus getValidationStatus(PublicKey publicKey) throws ValidationException {
+        return getValidationResult(publicKey).getStatusOrThrow();
+    }
+
+    private ValidationResult verify(PublicKey publicKey) {
+        Verification lastVerification = verification;
+        if (lastVerification != null && isSameKey(lastVerification.publicKey, publicKey))
+            return lastVerification.validationResult;
+
+        VerifiedTokensCache verifiedTokensCache = JWTEngine.getVerifiedTokensCache();
+        if (verifiedTokensCache != null && verifiedTokensCache.isVerified(jwtString, publicKey)) {
+            verification = new Verification(publicKey, ValidationResult.VALID);
+            return ValidationResult.VALID;
+        }
+
+        // algorithm and expiration were already checked from the claims
+        ValidationResult validationResult;
+        try {
+            PrecomputedES256Verifier precomputedVerifier = IssuerKeysRegistry.getVerifier(publicKey);
+            boolean verified = precomputedVerifier != null
+                    ? precomputedVerifier.verify(jwtString)
+                    : ES256Engine.verify(jwtString, publicKey);
+            validationResult = verified ? ValidationResult.VALID : ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+        } catch (InvalidKeyException e) {
+            validationResult = ValidationResult.INVALID_PUBLIC_KEY;
+        }
+        verification = new Verification(publicKey, validationResult);
+        // only successful verifications are ever cached
+        if (verifiedTokensCache != null && validationResult.isValid())
+            verifiedTokensCache.putVerified(jwtString, publicKey, jwtClaims.getExp());
+        return validationResult;
+    }
+
+    private static boolean isSameKey(PublicKey first, PublicKey second) {
+        // keys coming from different providers don't equal each other even if they hold the same point
+        return first.equals(second)
+                || Arrays.equals(first.getEncoded(), second.getEncoded());
+    }
+
+    /**
+     * @return the key found in the IPK claim
+     * @throws ValidationException if the claim is missing or malformed
+     */
+    public PublicKey getIssuerPublicKey() throws ValidationException {
+        PublicKey publicKey = issuerPublicKey;
+        if (publicKey == null) {
+            publicKey = decodePublicKey(jwtClaims.getIpk());
+            issuerPublicKey = publicKey;
+        }
+        return publicKey;
+    }
+
+    /**
+     * @return the key found in the IPK claim or null if the claim is missing or malformed
+     */
+    public PublicKey findIssuerPublicKey() {
+        PublicKey publicKey = issuerPublicKey;
+        if (publicKey == null) {
+            publicKey = findPublicKey(jwtClaims.getIpk());
+            issuerPublicKey = publicKey;
+        }
+        return publicKey;
+    }
+
+    /**
+     * @return the key found in the SPK claim
+     * @throws ValidationException if the claim is missing or malformed
+     */
+    public PublicKey getSubjectPublicKey() throws ValidationException {
+        PublicKey publicKey = subjectPublicKey;
+        if (publicKey == null) {
+            publicKey = decodePublicKey(jwtClaims.getSpk());
+            subjectPublicKey = publicKey;
+        }
+        return publicKey;
+    }
+
+    /**
+     * @return the key found in the SPK claim or null if the claim is missing or malformed
+     */
+    public PublicKey findSubjectPublicKey() {
+        PublicKey publicKey = subjectPublicKey;
+        if (publicKey == null) {
+            publicKey = findPublicKey(jwtClaims.getSpk());
+            subjectPublicKey = publicKey;
+        }
+        return publicKey;
+    }
+
+    private static PublicKey findPublicKey(String encodedKey) {
+        if (encodedKey == null)
+            return null;
+        try {
+            return PublicKeysCache.getPublicKey(encodedKey);
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static PublicKey decodePublicKey(String encodedKey) throws ValidationException {
+        if (encodedKey == null)
+            throw new ValidationException(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + "missing public key claim");
+        try {
+            return PublicKeysCache.getPublicKey(encodedKey);
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException | IllegalArgumentException e) {
+            throw new ValidationException(ValidationException.JSON_WEB_TOKEN_COULD_NOT_BE_VALIDATED + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return compacted signed token string
+     */
+    public String getJwtString() {
+        return jwtString;
+    }
+
+    /**
+     * @return symbIoTe claims decoded from the header and payload
+     */
+    public JWTClaims getJwtClaims() {
+        return jwtClaims;
+    }
+
+    /**
+     * @return payload claims, deserialized on first use
+     */
+    public Claims getClaims() {
+        Claims payloadClaims = claims;
+        if (payloadClaims == null) {
+            try {
+                payloadClaims = Jwts.claims(JWTClaimsReader.readClaimsMap(payload));
+            } catch (MalformedJWTException e) {
+                // the payload was already successfully streamed while decoding
+                throw new IllegalStateException(e);
+            }
+            claims = payloadClaims;
+        }
+        return payloadClaims;
+    }
+
+    /**
+     * Reads a single claim without deserializing all the payload claims (unless they already were)
+     *
+     * @param name of the claim
+     * @return value of the claim as text or null if the payload doesn't have it
+     */
+    public String getClaimAsString(String name) {
+        Claims payloadClaims = claims;
+        if (payloadClaims != null) {
+            Object value = payloadClaims.get(name);
+            return value == null ? null : value.toString();
+        }
+        try {
+            return JWTClaimsReader.readClaim(payload, name);
+        } catch (MalformedJWTException e) {
+            // the payload was already successfully streamed while decoding
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return jwtString;
+    }
+
+    private static final class Verification {
+        private final PublicKey publicKey;
+        private final ValidationResult validationResult;
+
+        private Verification(PublicKey publicKey, ValidationResult validationResult) {
+            this.publicKey = publicKey;
+            this.validationResult = validationResult;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.WNafUtil;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+
+/**
+ * ES256 verifier bound to a single issuer key, using Bouncy Castle's low-level EC arithmetic.
+ * <p>
+ * The key point is created once on the optimized P-256 curve together with its multiplication table, which is then
+ * reused by every verification instead of being recomputed for each token as the generic JCA path does.
+ */
+final class PrecomputedES256Verifier {
+
+    private static final X9ECParameters P256 = CustomNamedCurves.getByName("secp256r1");
+    private static final ECDomainParameters DOMAIN_PARAMETERS = new ECDomainParameters(P256.getCurve(), P256.getG(), P256.getN(), P256.getH());
+    // widest window used by Bouncy Castle in the ECDSA verification
+    private static final int PRECOMPUTATION_WIDTH = 8;
+    private static final int COMPONENT_LENGTH = 32;
+
+    static {
+        WNafUtil.precompute(DOMAIN_PARAMETERS.getG(), PRECOMPUTATION_WIDTH, true);
+    }
+
+    private final ECPublicKeyParameters publicKeyParameters;
+
+    private PrecomputedES256Verifier(ECPublicKeyParameters publicKeyParameters) {
+        this.publicKeyParameters = publicKeyParameters;
+    }
+
+    /**
+     * @param publicKey P-256 public key
+     * @return verifier with the key tables precomputed
+     * @throws IllegalArgumentException if the key is not a P-256 key
+     */
+    static PrecomputedES256Verifier create(ECPublicKey publicKey) {
+        if (publicKey.getParams().getCurve().getField().getFieldSize() != P256.getCurve().getFieldSize()
+                || !publicKey.getParams().getOrder().equals(P256.getN()))
+            throw new IllegalArgumentException("Only P-256 keys are supported");
+        ECPoint point = DOMAIN_PARAMETERS.getCurve().validatePoint(publicKey.getW().getAffineX(), publicKey.getW().getAffineY());
+        ECPublicKeyParameters publicKeyParameters = new ECPublicKeyParameters(point, DOMAIN_PARAMETERS);
+        // the table is attached to the point instance, which is reused by the signer
+        WNafUtil.precompute(publicKeyParameters.getQ(), PRECOMPUTATION_WIDTH, true);
+        return new PrecomputedES256Verifier(publicKeyParameters);
+    }
+
+    /**
+     * Verifies only the signature, the claims (e.g. the expiration) are not checked
+     *
+     * @param jwtString compact JWS
+     * @return true if the JWS is ES256 signed with this verifier's key
+     */
+    boolean verify(String jwtString) {
+        int payloadEnd = ES256Engine.signingInputEnd(jwtString);
+        byte[] rawSignature = ES256Engine.decodeRawSignature(jwtString, payloadEnd);
+        if (rawSignature == null)
+            return false;
+
+        byte[] hash;
+        try {
+            MessageDigest messageDigest = ECDSAHelper.getMessageDigest("SHA-256");
+            if (!ES256Engine.updateWithAscii(messageDigest, jwtString, payloadEnd))
+                return false;
+            hash = messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory for every Java platform
+            throw new IllegalStateException(e);
+        }
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(rawSignature, 0, COMPONENT_LENGTH));
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(rawSignature, COMPONENT_LENGTH, 2 * COMPONENT_LENGTH));
+
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(false, publicKeyParameters);
+        return signer.verifySignature(hash, r, s);
+    }
+}
@@ -0,0 +1,80 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded cache of EC public keys decoded from the base64 encoded IPK/SPK claims.
+ * <p>
+ * In a deployment only a handful of AAM keys and a limited set of clients' keys show up in the tokens, so
+ * decoding each of them once saves the {@link java.security.KeyFactory} work on every validation.
+ */
+public class PublicKeysCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private static final ConcurrentMap<String, PublicKey> publicKeys = new ConcurrentHashMap<>();
+    private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private PublicKeysCache() {
+    }
+
+    /**
+     * @param encodedKey base64 encoded X.509 representation of the key (as in the IPK/SPK claims)
+     * @return the decoded key
+     * @throws InvalidKeySpecException  if the key is malformed
+     * @throws NoSuchAlgorithmException if EC keys are not supported
+     */
+    public static PublicKey getPublicKey(String encodedKey) throws
+            InvalidKeySpecException,
+            NoSuchAlgorithmException {
+        PublicKey publicKey = publicKeys.get(encodedKey);
+        if (publicKey != null)
+            return publicKey;
+
+        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(Base64.getDecoder().decode(encodedKey));
+        publicKey = ECDSAHelper.getKeyFactory().generatePublic(keySpec);
+
+        // making room for the new key, which one goes doesn't matter much as the set of keys is small and stable
+        if (publicKeys.size() >= maximumSize) {
+            Iterator<String> iterator = publicKeys.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        PublicKey cachedPublicKey = publicKeys.putIfAbsent(encodedKey, publicKey);
+        return cachedPublicKey != null ? cachedPublicKey : publicKey;
+    }
+
+    /**
+     * @param size maximum number of cached keys
+     */
+    public static void setMaximumSize(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        maximumSize = size;
+    }
+
+    /**
+     * @return number of cached keys
+     */
+    public static int size() {
+        return publicKeys.size();
+    }
+
+    /**
+     * drops all the cached keys
+     */
+    public static void clear() {
+        publicKeys.clear();
+    }
+}
@@ -0,0 +1,201 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of successfully verified JWS, keyed by the SHA-256 digest of the compact serialization.
+ * <p>
+ * Entries live until the token's expiration time and are evicted in least-recently-used order once the cache is
+ * full. The cache is split into independently locked segments so that concurrent lookups of different tokens don't
+ * contend. Only successful verifications are ever stored, see {@link JWTEngine#enableVerifiedTokensCache(int)}.
+ */
+public class VerifiedTokensCache {
+
+    private static final int MAXIMUM_SEGMENTS_COUNT = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * @param maximumSize of the cache, must be positive
+     */
+    public VerifiedTokensCache(int maximumSize) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        // splitting the size exactly, so that the segments together never exceed it
+        segments = new Segment[Math.min(maximumSize, MAXIMUM_SEGMENTS_COUNT)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maximumSize / segments.length + (i < maximumSize % segments.length ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param jwtString compact JWS
+     * @param publicKey that the JWS should be verified with
+     * @return true if the JWS was already successfully verified using the given key and is not yet expired
+     */
+    public boolean isVerified(String jwtString, PublicKey publicKey) {
+        Digest digest = new Digest(jwtString);
+        VerifiedEntry entry = segmentFor(digest).get(digest);
+        if (entry == null) {
+            missCount.increment();
+            return false;
+        }
+        if (entry.expirationTime <= System.currentTimeMillis()) {
+            segmentFor(digest).remove(digest, entry);
+            expirationCount.increment();
+            missCount.increment();
+            return false;
+        }
+        if (!Arrays.equals(entry.encodedPublicKey, publicKey.getEncoded())) {
+            missCount.increment();
+            return false;
+        }
+        hitCount.increment();
+        return true;
+    }
+
+    /**
+     * Stores a successful verification outcome
+     *
+     * @param jwtString      compact JWS that was verified
+     * @param publicKey      that was used to verify the JWS
+     * @param expirationTime of the JWS in milliseconds, tokens without expiration aren't cached
+     */
+    public void putVerified(String jwtString, PublicKey publicKey, Long expirationTime) {
+        if (expirationTime == null || expirationTime <= System.currentTimeMillis())
+            return;
+        Digest digest = new Digest(jwtString);
+        segmentFor(digest).put(digest, new VerifiedEntry(publicKey.getEncoded(), expirationTime));
+    }
+
+    /**
+     * drops all the cached entries
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return number of cached entries (including expired ones not yet removed)
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of entries dropped to keep the cache within its maximum size
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return number of entries dropped due to the token expiration
+     */
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    private Segment segmentFor(Digest digest) {
+        return segments[(digest.hashCode() & 0x7fffffff) % segments.length];
+    }
+
+    private static final class VerifiedEntry {
+        private final byte[] encodedPublicKey;
+        private final long expirationTime;
+
+        private VerifiedEntry(byte[] encodedPublicKey, long expirationTime) {
+            this.encodedPublicKey = encodedPublicKey;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private static final class Digest {
+        private final byte[] value;
+        private final int hashCode;
+
+        private Digest(String jwtString) {
+            try {
+                this.value = ECDSAHelper.getMessageDigest("SHA-256").digest(jwtString.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                // SHA-256 is mandatory for every Java platform
+                throw new IllegalStateException(e);
+            }
+            this.hashCode = Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Arrays.equals(value, ((Digest) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final class Segment {
+        private final Map<Digest, VerifiedEntry> entries;
+
+        private Segment(int maximumSize) {
+            this.entries = new LinkedHashMap<Digest, VerifiedEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Digest, VerifiedEntry> eldest) {
+                    if (size() <= maximumSize)
+                        return false;
+                    evictionCount.increment();
+                    return true;
+                }
+            };
+        }
+
+        private synchronized VerifiedEntry get(Digest digest) {
+            return entries.get(digest);
+        }
+
+        private synchronized void put(Digest digest, VerifiedEntry entry) {
+            entries.put(digest, entry);
+        }
+
+        private synchronized void remove(Digest digest, VerifiedEntry entry) {
+            entries.remove(digest, entry);
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
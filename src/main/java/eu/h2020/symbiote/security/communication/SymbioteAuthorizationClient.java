@@ -2,9 +2,13 @@ package eu.h2020.symbiote.security.communication;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
 import eu.h2020.symbiote.security.commons.exceptions.custom.SecurityHandlerException;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
+import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
 import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
 import eu.h2020.symbiote.security.handler.IComponentSecurityHandler;
+import eu.h2020.symbiote.security.helpers.MutualAuthenticationHelper;
 import feign.Client;
 import feign.Request;
 import feign.Response;
@@ -12,22 +16,43 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
+import java.time.Clock;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class SymbioteAuthorizationClient implements Client {
   
   private static final Log logger = LogFactory.getLog(SymbioteAuthorizationClient.class);
   
+  /**
+   * default period (in milliseconds) for which a signed security request is reused by subsequent calls, none so that
+   * each call generates its own security request unless a reuse window is given
+   */
+  public static final long DEFAULT_SECURITY_REQUEST_REUSE_WINDOW = 0;
+  
   private IComponentSecurityHandler handler = null;
   private Client client;
   private String serviceComponentIdentifier;
   private String servicePlatformIdentifier;
+  private final long securityRequestReuseWindow;
+  private volatile Executor regenerationExecutor = ForkJoinPool.commonPool();
+  private volatile Clock clock = Clock.systemUTC();
+  private final AtomicReference<ReusableSecurityRequest> reusableSecurityRequest = new AtomicReference<>();
+  private final AtomicBoolean regenerating = new AtomicBoolean();
+  private final Object regenerationLock = new Object();
   
   /**
+   * Generates a new security request for each call.
+   *
    * @param handler                    configured for this component
    * @param serviceComponentIdentifier of the service this client is used to communicate with
    * @param servicePlatformIdentifier  to which the service belongs ({@link SecurityConstants#CORE_AAM_INSTANCE_ID}
@@ -35,10 +60,45 @@ public class SymbioteAuthorizationClient implements Client {
    * @param client                     used for business logic
    */
   public SymbioteAuthorizationClient(IComponentSecurityHandler handler, String serviceComponentIdentifier, String servicePlatformIdentifier, Client client) {
+    this(handler, serviceComponentIdentifier, servicePlatformIdentifier, client, DEFAULT_SECURITY_REQUEST_REUSE_WINDOW);
+  }
+  
+  /**
+   * The signed security request (and its headers) is shared by all the calls made within the reuse window and a new
+   * one is generated in the background shortly before the window ends, so that most calls don't sign a challenge.
+   * The window never exceeds half of {@link MutualAuthenticationHelper#SERVICE_RESPONSE_EXPIRATION_TIME} nor the
+   * expiration of the request's tokens, and the request is dropped as soon as the service rejects it.
+   *
+   * @param handler                    configured for this component
+   * @param serviceComponentIdentifier of the service this client is used to communicate with
+   * @param servicePlatformIdentifier  to which the service belongs ({@link SecurityConstants#CORE_AAM_INSTANCE_ID}
+   *                                   for Symbiote core components)
+   * @param client                     used for business logic
+   * @param securityRequestReuseWindow in milliseconds, 0 generates a new security request for each call
+   */
+  public SymbioteAuthorizationClient(IComponentSecurityHandler handler, String serviceComponentIdentifier, String servicePlatformIdentifier, Client client, long securityRequestReuseWindow) {
+    if (securityRequestReuseWindow < 0)
+      throw new IllegalArgumentException("Security request reuse window can't be negative");
     this.handler = handler;
     this.serviceComponentIdentifier = serviceComponentIdentifier;
     this.servicePlatformIdentifier = servicePlatformIdentifier;
     this.client = client;
+    this.securityRequestReuseWindow = securityRequestReuseWindow;
+  }
+  
+  /**
+   * @param regenerationExecutor used to generate the next security request in the background, the common pool is used
+   *                             by default
+   */
+  public void setRegenerationExecutor(Executor regenerationExecutor) {
+    this.regenerationExecutor = Objects.requireNonNull(regenerationExecutor);
+  }
+  
+  /**
+   * @param clock the reuse window is checked against, the system clock is used by default
+   */
+  public void setClock(Clock clock) {
+    this.clock = Objects.requireNonNull(clock);
   }
   
   
@@ -48,12 +108,8 @@ public class SymbioteAuthorizationClient implements Client {
     String errMsg = null;
     
     try {
-      SecurityRequest credentials = handler.generateSecurityRequestUsingLocalCredentials();
-      
-      Map<String, Collection<String>> headers = credentials.getSecurityRequestHeaderParams().entrySet().stream()
-                                                    .collect(Collectors.toMap(entry -> entry.getKey(),
-                                                        entry -> Arrays.asList(entry.getValue())));
-      
+      ReusableSecurityRequest securityRequest = getSecurityRequest();
+      Map<String, Collection<String>> headers = new HashMap<>(securityRequest.headers);
       headers.putAll(request.headers());
       
       Request newRequest = Request.create(request.method(), request.url(),
@@ -61,6 +117,8 @@ public class SymbioteAuthorizationClient implements Client {
       
       Response response = client.execute(newRequest, options);
       
+      if (response.status() == 401 || response.status() == 403)
+        dropSecurityRequest(securityRequest);
       if (response.status() >= 200 && response.status() < 300) {
         Collection<String> secResponse =
             response.headers().get(SecurityConstants.SECURITY_RESPONSE_HEADER);
@@ -68,11 +126,13 @@ public class SymbioteAuthorizationClient implements Client {
         if (secResponse != null && !secResponse.isEmpty()) {
           try {
             if (!handler.isReceivedServiceResponseVerified(secResponse.iterator().next(), serviceComponentIdentifier, servicePlatformIdentifier)) {
+              dropSecurityRequest(securityRequest);
               return Response.builder().status(400).reason("Server response verification failed")
                          .body("Server response verification failed".getBytes())
                          .headers(response.headers()).build();
             }
           } catch (SecurityHandlerException e) {
+            dropSecurityRequest(securityRequest);
             return Response.builder().status(400).reason("Server response verification failed: "+e.getErrorMessage())
                        .body(("Server response verification failed: "+e.getErrorMessage()).getBytes())
                        .headers(response.headers()).build();
@@ -102,4 +162,87 @@ public class SymbioteAuthorizationClient implements Client {
                .body(msg.getBytes())
                .headers(new HashMap<>()).build();
   }
+  
+  private ReusableSecurityRequest getSecurityRequest() throws SecurityHandlerException, JsonProcessingException {
+    if (securityRequestReuseWindow == 0)
+      return new ReusableSecurityRequest(toHeaders(handler.generateSecurityRequestUsingLocalCredentials()), 0, 0);
+    
+    long now = clock.millis();
+    ReusableSecurityRequest current = reusableSecurityRequest.get();
+    if (current == null || now >= current.expirationTime)
+      return regenerate(current);
+    if (now >= current.regenerationTime && regenerating.compareAndSet(false, true)) {
+      try {
+        regenerationExecutor.execute(() -> {
+          try {
+            regenerate(current);
+          } catch (SecurityHandlerException | JsonProcessingException e) {
+            // the calls regenerate it themselves once the current one ends
+            logger.warn("Failed to regenerate the security request in the background", e);
+          } finally {
+            regenerating.set(false);
+          }
+        });
+      } catch (RuntimeException e) {
+        regenerating.set(false);
+        logger.warn("Failed to schedule the security request regeneration", e);
+      }
+    }
+    return current;
+  }
+  
+  /**
+   * Stops reusing the security request the service rejected, unless it was already replaced
+   */
+  private void dropSecurityRequest(ReusableSecurityRequest rejected) {
+    reusableSecurityRequest.compareAndSet(rejected, null);
+  }
+  
+  /**
+   * Replaces the given security request, unless another thread already did
+   */
+  private ReusableSecurityRequest regenerate(ReusableSecurityRequest replaced) throws SecurityHandlerException, JsonProcessingException {
+    synchronized (regenerationLock) {
+      ReusableSecurityRequest current = reusableSecurityRequest.get();
+      if (current != replaced && current != null && clock.millis() < current.expirationTime)
+        return current;
+      
+      SecurityRequest securityRequest = handler.generateSecurityRequestUsingLocalCredentials();
+      long window = Math.min(securityRequestReuseWindow, MutualAuthenticationHelper.SERVICE_RESPONSE_EXPIRATION_TIME * 1000 / 2);
+      long expirationTime = securityRequest.getTimestamp() + window;
+      for (SecurityCredentials securityCredentials : securityRequest.getSecurityCredentials()) {
+        try {
+          Long tokenExpiration = ParsedJws.decode(securityCredentials.getToken()).getJwtClaims().getExp();
+          if (tokenExpiration != null)
+            expirationTime = Math.min(expirationTime, tokenExpiration);
+        } catch (MalformedJWTException e) {
+          // not worth reusing, the service will reject it
+          expirationTime = securityRequest.getTimestamp();
+        }
+      }
+      // the next one is generated during the last quarter of the window
+      long regenerationTime = expirationTime - (expirationTime - securityRequest.getTimestamp()) / 4;
+      current = new ReusableSecurityRequest(toHeaders(securityRequest), regenerationTime, expirationTime);
+      reusableSecurityRequest.set(current);
+      return current;
+    }
+  }
+  
+  private static Map<String, Collection<String>> toHeaders(SecurityRequest securityRequest) throws JsonProcessingException {
+    return Collections.unmodifiableMap(securityRequest.getSecurityRequestHeaderParams().entrySet().stream()
+                                           .collect(Collectors.toMap(entry -> entry.getKey(),
+                                               entry -> Collections.unmodifiableList(Arrays.asList(entry.getValue())))));
+  }
+  
+  private static final class ReusableSecurityRequest {
+    private final Map<String, Collection<String>> headers;
+    private final long regenerationTime;
+    private final long expirationTime;
+    
+    private ReusableSecurityRequest(Map<String, Collection<String>> headers, long regenerationTime, long expirationTime) {
+      this.headers = headers;
+      this.regenerationTime = regenerationTime;
+      this.expirationTime = expirationTime;
+    }
+  }
 }
@@ -0,0 +1,201 @@
+package eu.h2020.symbiote.security.handler;
+
+import eu.h2020.symbiote.security.commons.Certificate;
+import eu.h2020.symbiote.security.commons.exceptions.custom.SecurityHandlerException;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of the components' certificates fetched from the AAM, keyed by (component, platform).
+ * <p>
+ * Entries expire after the configured time to live, so that rotated certificates are eventually picked up even if
+ * nothing fails with the cached ones. Concurrent fetches of the same certificate are collapsed into a single AAM
+ * call whose outcome is shared by all the waiting threads. A certificate that failed a verification can be dropped
+ * with {@link #refresh(String, String, Certificate, CertificateFetcher)}, which fetches it again only if no other
+ * thread already replaced it and it wasn't fetched within the minimum refresh interval, so that a stream of bogus
+ * responses can't turn into a stream of AAM calls.
+ */
+public class ComponentCertificatesCache {
+
+    /**
+     * default time (in milliseconds) after which a cached certificate is fetched again
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 300000;
+    /**
+     * default time (in milliseconds) within which a fetched certificate is not fetched again on a failed verification
+     */
+    public static final long DEFAULT_MINIMUM_REFRESH_INTERVAL = 10000;
+
+    private final Clock clock;
+    private final ConcurrentMap<String, CachedCertificate> certificates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<CachedCertificate>> pendingFetches = new ConcurrentHashMap<>();
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private volatile long minimumRefreshInterval = DEFAULT_MINIMUM_REFRESH_INTERVAL;
+
+    public ComponentCertificatesCache() {
+        this(Clock.systemUTC());
+    }
+
+    /**
+     * @param clock the certificates' fetch times are taken from
+     */
+    public ComponentCertificatesCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param componentIdentifier of the certificate's owner
+     * @param platformIdentifier  of the certificate's owner
+     * @param fetcher             used when the certificate is missing or expired
+     * @return the cached certificate, or a freshly fetched one
+     * @throws SecurityHandlerException if the fetch failed
+     */
+    public Certificate get(String componentIdentifier,
+                           String platformIdentifier,
+                           CertificateFetcher fetcher) throws
+            SecurityHandlerException {
+        CachedCertificate cached = certificates.get(key(componentIdentifier, platformIdentifier));
+        if (cached != null && cached.isFresh(clock.millis()))
+            return cached.certificate;
+        return fetch(componentIdentifier, platformIdentifier, null, fetcher);
+    }
+
+    /**
+     * Forces a fetch of the given component's certificate, unless the cached one was already replaced since the
+     * caller got the stale one or the stale one was fetched within the minimum refresh interval.
+     *
+     * @param componentIdentifier of the certificate's owner
+     * @param platformIdentifier  of the certificate's owner
+     * @param staleCertificate    the certificate that failed the verification
+     * @param fetcher             used to fetch the certificate
+     * @return the refreshed certificate, the stale one if it was fetched too recently
+     * @throws SecurityHandlerException if the fetch failed
+     */
+    public Certificate refresh(String componentIdentifier,
+                               String platformIdentifier,
+                               Certificate staleCertificate,
+                               CertificateFetcher fetcher) throws
+            SecurityHandlerException {
+        CachedCertificate cached = certificates.get(key(componentIdentifier, platformIdentifier));
+        long now = clock.millis();
+        if (cached != null
+                && (cached.certificate != staleCertificate || now - cached.fetchTime < minimumRefreshInterval)
+                && cached.isFresh(now))
+            return cached.certificate;
+        return fetch(componentIdentifier, platformIdentifier, staleCertificate, fetcher);
+    }
+
+    /**
+     * @param timeToLive in milliseconds, after which a cached certificate is fetched again, 0 disables the cache
+     */
+    public void setTimeToLive(long timeToLive) {
+        if (timeToLive < 0)
+            throw new IllegalArgumentException("Time to live can't be negative");
+        this.timeToLive = timeToLive;
+        certificates.clear();
+    }
+
+    /**
+     * @param minimumRefreshInterval in milliseconds, within which a fetched certificate is not fetched again on a
+     *                               failed verification, 0 fetches it on each one
+     */
+    public void setMinimumRefreshInterval(long minimumRefreshInterval) {
+        if (minimumRefreshInterval < 0)
+            throw new IllegalArgumentException("Minimum refresh interval can't be negative");
+        this.minimumRefreshInterval = minimumRefreshInterval;
+    }
+
+    /**
+     * @return number of cached certificates (including expired ones not yet replaced)
+     */
+    public int size() {
+        return certificates.size();
+    }
+
+    /**
+     * drops all the cached certificates
+     */
+    public void clear() {
+        certificates.clear();
+    }
+
+    private Certificate fetch(String componentIdentifier,
+                              String platformIdentifier,
+                              Certificate staleCertificate,
+                              CertificateFetcher fetcher) throws
+            SecurityHandlerException {
+        String key = key(componentIdentifier, platformIdentifier);
+        CompletableFuture<CachedCertificate> fetch = new CompletableFuture<>();
+        CompletableFuture<CachedCertificate> pendingFetch = pendingFetches.putIfAbsent(key, fetch);
+        if (pendingFetch != null)
+            return await(pendingFetch).certificate;
+
+        try {
+            // another thread might have completed the fetch just before we registered ours
+            CachedCertificate cached = certificates.get(key);
+            if (cached == null
+                    || cached.certificate == staleCertificate
+                    || !cached.isFresh(clock.millis())) {
+                long ttl = timeToLive;
+                Certificate certificate = fetcher.fetch(componentIdentifier, platformIdentifier);
+                cached = new CachedCertificate(certificate, clock.millis(), ttl);
+                if (ttl > 0)
+                    certificates.put(key, cached);
+            }
+            fetch.complete(cached);
+            return cached.certificate;
+        } catch (SecurityHandlerException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingFetches.remove(key, fetch);
+        }
+    }
+
+    private static CachedCertificate await(CompletableFuture<CachedCertificate> pendingFetch) throws
+            SecurityHandlerException {
+        try {
+            return pendingFetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecurityHandlerException("Interrupted while waiting for the component certificate", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SecurityHandlerException)
+                throw (SecurityHandlerException) e.getCause();
+            throw new SecurityHandlerException("Failed to fetch the component certificate from the AAM. " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static String key(String componentIdentifier, String platformIdentifier) {
+        return componentIdentifier + "@" + platformIdentifier;
+    }
+
+    /**
+     * fetches a component's certificate from its AAM
+     */
+    public interface CertificateFetcher {
+        Certificate fetch(String componentIdentifier,
+                          String platformIdentifier) throws
+                SecurityHandlerException;
+    }
+
+    private static final class CachedCertificate {
+        private final Certificate certificate;
+        private final long fetchTime;
+        private final long expirationTime;
+
+        private CachedCertificate(Certificate certificate, long fetchTime, long timeToLive) {
+            this.certificate = certificate;
+            this.fetchTime = fetchTime;
+            this.expirationTime = fetchTime + timeToLive;
+        }
+
+        private boolean isFresh(long now) {
+            return now < expirationTime;
+        }
+    }
+}
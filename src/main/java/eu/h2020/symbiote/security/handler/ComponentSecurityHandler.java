@@ -5,6 +5,7 @@ import eu.h2020.symbiote.security.clients.SymbioteComponentClientFactory;
 import eu.h2020.symbiote.security.commons.Certificate;
 import eu.h2020.symbiote.security.commons.SecurityConstants;
 import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.ValidationResult;
 import eu.h2020.symbiote.security.commons.credentials.AuthorizationCredentials;
 import eu.h2020.symbiote.security.commons.credentials.BoundCredentials;
 import eu.h2020.symbiote.security.commons.credentials.HomeCredentials;
@@ -13,6 +14,7 @@ import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTExceptio
 import eu.h2020.symbiote.security.commons.exceptions.custom.SecurityHandlerException;
 import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
 import eu.h2020.symbiote.security.commons.jwt.JWTEngine;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
 import eu.h2020.symbiote.security.communication.interfaces.IFeignADMComponentClient;
 import eu.h2020.symbiote.security.communication.payloads.*;
 import eu.h2020.symbiote.security.helpers.ABACPolicyHelper;
@@ -24,8 +26,11 @@ import org.springframework.http.HttpStatus;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
-import java.security.spec.InvalidKeySpecException;
+import java.time.Clock;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * used by SymbIoTe Components to integrate with the security layer
@@ -37,12 +42,27 @@ import java.util.*;
 public class ComponentSecurityHandler implements IComponentSecurityHandler {
 
     private static final Log log = LogFactory.getLog(ComponentSecurityHandler.class);
+    private static final ValidationResult ISSUER_CERTIFICATE_NOT_AVAILABLE = ValidationResult.error("ISSUER platform certificate is not available");
+    /**
+     * default length (in milliseconds) of the time slices in which a single signed service response is shared
+     */
+    public static final long DEFAULT_SERVICE_RESPONSE_TIME_SLICE = 1000;
     private final ISecurityHandler securityHandler;
     private final AAM localAAM;
     private final String componentOwnerUsername;
     private final String componentOwnerPassword;
     private final String combinedClientIdentifier;
     private IFeignADMComponentClient admComponentClient;
+    private volatile long serviceResponseTimeSlice = DEFAULT_SERVICE_RESPONSE_TIME_SLICE;
+    private volatile Clock clock = Clock.systemUTC();
+    private volatile Executor signingExecutor = ForkJoinPool.commonPool();
+    private volatile boolean deferredSignatureVerification = false;
+    private volatile SignedServiceResponse currentServiceResponse = null;
+    private volatile SignedServiceResponse nextServiceResponse = null;
+    private final AtomicBoolean signingNextServiceResponse = new AtomicBoolean();
+    private final Object serviceResponseLock = new Object();
+    // held while the certificate of this component is issued, so that concurrent callers issue it once
+    private final Object localAAMCertificateLock = new Object();
 
     public ComponentSecurityHandler(ISecurityHandler securityHandler,
                                     String localAAMAddress,
@@ -66,59 +86,66 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
             throw new SecurityHandlerException("You are not connected to your local aam");
         }
 
-        // checks if the provided AAM credentials are valid
-        generateServiceResponse();
+        // checks if the provided AAM credentials are valid, without signing any response ahead in the background
+        signServiceResponse(clock.millis());
     }
 
 
-    private ValidationStatus isReceivedSecurityRequestValid(SecurityRequest securityRequest) throws
-            SecurityHandlerException {
+    private ValidationResult checkReceivedSecurityRequest(SecurityRequest securityRequest) {
 
         // verifying that the request is integral and the client should posses the tokens in it
-        try {
-            if (!MutualAuthenticationHelper.isSecurityRequestVerified(securityRequest)) {
-                log.debug("The security request failed mutual authentication check");
-                return ValidationStatus.INVALID_TRUST_CHAIN;
-            }
-        } catch (NoSuchAlgorithmException | MalformedJWTException | InvalidKeySpecException | ValidationException e) {
-            log.error(e);
-            throw new SecurityHandlerException(e.getMessage());
+        ValidationResult mutualAuthenticationResult = MutualAuthenticationHelper.verifySecurityRequest(securityRequest);
+        if (mutualAuthenticationResult.isError())
+            return mutualAuthenticationResult;
+        if (!mutualAuthenticationResult.isValid()) {
+            log.debug("The security request failed mutual authentication check");
+            return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
         }
 
         // validating the authorization tokens
         for (SecurityCredentials securityCredentials : securityRequest.getSecurityCredentials()) {
             try {
-                Token authorizationToken = new Token(securityCredentials.getToken());
-                ValidationStatus tokenValidationStatus;
-                AAM issuer = securityHandler.getAvailableAAMs(localAAM).get(authorizationToken.getClaims().getIssuer());
+                ParsedJws authorizationTokenJws = ParsedJws.decode(securityCredentials.getToken());
+                ValidationResult tokenValidationResult = authorizationTokenJws.getValidationResult();
+                if (tokenValidationResult.isError())
+                    return tokenValidationResult;
+                if (!tokenValidationResult.isValid()) {
+                    // reported as not validated at all, like malformed tokens
+                    log.debug(tokenValidationResult);
+                    return ValidationResult.of(ValidationStatus.UNKNOWN);
+                }
+                AAM issuer = securityHandler.getAvailableAAMs(localAAM).get(authorizationTokenJws.getJwtClaims().getIss());
                 if (issuer == null
                         || issuer.getAamCACertificate().getCertificateString().isEmpty()) {
-                    throw new SecurityHandlerException("ISSUER platform certificate is not available");
+                    return ISSUER_CERTIFICATE_NOT_AVAILABLE;
                 }
-                tokenValidationStatus = JWTEngine.validateTokenString(authorizationToken.toString(), issuer.getAamCACertificate().getX509().getPublicKey());
-                if (tokenValidationStatus != ValidationStatus.VALID)
-                    return tokenValidationStatus;
+                // reuses the outcome above if the issuer's key is the one from the token's IPK
+                tokenValidationResult = authorizationTokenJws.getValidationResult(issuer.getAamCACertificate().getPublicKey());
+                if (!tokenValidationResult.isValid())
+                    return tokenValidationResult;
 
                 // validate
-                tokenValidationStatus = securityHandler.validate(
+                ValidationStatus tokenValidationStatus = securityHandler.validate(
                         localAAM,
-                        authorizationToken.getToken(),
+                        authorizationTokenJws.getJwtString(),
                         Optional.of(securityCredentials.getClientCertificate()),
                         Optional.of(securityCredentials.getClientCertificateSigningAAMCertificate()),
                         Optional.of(securityCredentials.getForeignTokenIssuingAAMCertificate()));
                 // any invalid token causes the whole validation to fail
                 if (tokenValidationStatus != ValidationStatus.VALID) {
                     log.debug("token was invalidated with the following reason: " + tokenValidationStatus);
-                    return tokenValidationStatus;
+                    return ValidationResult.of(tokenValidationStatus);
                 }
-            } catch (ValidationException | CertificateException e) {
+            } catch (MalformedJWTException e) {
+                return ValidationResult.MALFORMED_TOKEN;
+            } catch (SecurityHandlerException | CertificateException e) {
                 log.error(e);
-                throw new SecurityHandlerException(e.getMessage());
+                return ValidationResult.error(e.getMessage());
             }
         }
 
         // all security checks passed
-        return ValidationStatus.VALID;
+        return ValidationResult.VALID;
     }
 
     @Override
@@ -126,9 +153,23 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
                                                      String componentIdentifier,
                                                      String platformIdentifier)
             throws SecurityHandlerException {
+        Certificate componentCertificate = securityHandler.getComponentCertificate(componentIdentifier, platformIdentifier);
+        if (isServiceResponseVerified(serviceResponse, componentCertificate))
+            return true;
+
+        // the component might have rotated its certificate since we cached it
+        Certificate refreshedCertificate = securityHandler.refreshComponentCertificate(componentIdentifier, platformIdentifier, componentCertificate);
+        if (refreshedCertificate == null
+                || refreshedCertificate.getCertificateString().equals(componentCertificate.getCertificateString()))
+            return false;
+        log.debug("Retrying the service response verification with the refreshed certificate of " + componentIdentifier + "@" + platformIdentifier);
+        return isServiceResponseVerified(serviceResponse, refreshedCertificate);
+    }
+
+    private static boolean isServiceResponseVerified(String serviceResponse,
+                                                     Certificate componentCertificate) {
         try {
-            return MutualAuthenticationHelper.isServiceResponseVerified(serviceResponse,
-                    securityHandler.getComponentCertificate(componentIdentifier, platformIdentifier));
+            return MutualAuthenticationHelper.isServiceResponseVerified(serviceResponse, componentCertificate);
         } catch (NoSuchAlgorithmException | CertificateException e) {
             log.error("Failed to verify the serviceResponse, the operation should be retried: " + e.getMessage());
             return false;
@@ -149,7 +190,9 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
 
         Set<String> accessiblePolicies = new HashSet<>();
         // resolving which tokens authorize access to resources -> filtering the security request to only contain business request relevant credentials
-        Map<String, Set<SecurityCredentials>> abacResolverResponse = ABACPolicyHelper.checkRequestedOperationAccess(accessPolicies, securityRequest);
+        Map<String, Set<SecurityCredentials>> abacResolverResponse = ABACPolicyHelper.checkRequestedOperationAccess(accessPolicies,
+                securityRequest,
+                deferredSignatureVerification);
 
         // validating credentials for each resource
         for (Map.Entry<String, Set<SecurityCredentials>> authorizedPolicy : abacResolverResponse.entrySet()) {
@@ -171,21 +214,15 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
                 // need to validate the partial policy
                 Set<SecurityCredentials> credentialsForVerification = new HashSet<>(1);
                 credentialsForVerification.add(partialPolicyCredentials);
-                try {
-                    // validating the current policy
-                    ValidationStatus freshValidationStatus = isReceivedSecurityRequestValid(new SecurityRequest(credentialsForVerification, securityRequest.getTimestamp()));
-                    // storing the result in our cache
-                    alreadyValidatedCredentialsCache.put(partialPolicyCredentials, freshValidationStatus);
-                    // success, these credentials satisfy security requirements
-                    if (freshValidationStatus == ValidationStatus.VALID)
-                        validatedCredentials++;
-                    else
-                        log.debug(freshValidationStatus);
-                } catch (SecurityHandlerException e) {
-                    // validation failed, storing with unknown status
-                    log.debug(e);
-                    alreadyValidatedCredentialsCache.put(partialPolicyCredentials, ValidationStatus.UNKNOWN);
-                }
+                // validating the current policy, failed validation is stored with unknown status
+                ValidationResult freshValidationResult = checkReceivedSecurityRequest(new SecurityRequest(credentialsForVerification, securityRequest.getTimestamp()));
+                // storing the result in our cache
+                alreadyValidatedCredentialsCache.put(partialPolicyCredentials, freshValidationResult.getStatus());
+                // success, these credentials satisfy security requirements
+                if (freshValidationResult.isValid())
+                    validatedCredentials++;
+                else
+                    log.debug(freshValidationResult);
             }
 
             // all credentials need to be valid to confirm the policy access
@@ -212,13 +249,112 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
         }
     }
 
+    /**
+     * Within each time slice all the calls of {@link #generateServiceResponse()} share a single response, timestamped
+     * with the slice start, and the response of the next slice is signed in the background during the last quarter
+     * of the current one. The slice never exceeds half of
+     * {@link MutualAuthenticationHelper#SERVICE_RESPONSE_EXPIRATION_TIME}, so the shared responses stay well within
+     * the validity window checked by the clients.
+     *
+     * @param serviceResponseTimeSlice in milliseconds, 0 signs a new response on each call
+     */
+    public void setServiceResponseTimeSlice(long serviceResponseTimeSlice) {
+        if (serviceResponseTimeSlice < 0)
+            throw new IllegalArgumentException("Service response time slice can't be negative");
+        synchronized (serviceResponseLock) {
+            this.serviceResponseTimeSlice = serviceResponseTimeSlice;
+            currentServiceResponse = null;
+            nextServiceResponse = null;
+        }
+    }
+
+    /**
+     * @param clock the service response time slices are cut from, the system clock is used by default
+     */
+    public void setClock(Clock clock) {
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    /**
+     * @param signingExecutor used to sign the next time slice's service response in the background, the common pool
+     *                        is used by default
+     */
+    public void setSigningExecutor(Executor signingExecutor) {
+        this.signingExecutor = Objects.requireNonNull(signingExecutor);
+    }
+
+    /**
+     * @param deferredSignatureVerification true to resolve the access policies against the tokens' unverified claims
+     *                                      and verify the signatures of only the tokens satisfying them, see
+     *                                      {@link ABACPolicyHelper#checkRequestedOperationAccess(Map, SecurityRequest, boolean)}.
+     *                                      All the tokens are verified upfront by default.
+     */
+    public void setDeferredSignatureVerification(boolean deferredSignatureVerification) {
+        this.deferredSignatureVerification = deferredSignatureVerification;
+    }
+
     @Override
     public String generateServiceResponse() throws
             SecurityHandlerException {
+        long timeSlice = Math.min(serviceResponseTimeSlice, MutualAuthenticationHelper.SERVICE_RESPONSE_EXPIRATION_TIME * 1000 / 2);
+        if (timeSlice <= 0)
+            return signServiceResponse(clock.millis());
+
+        long now = clock.millis();
+        long sliceStart = now - now % timeSlice;
+        SignedServiceResponse serviceResponse = currentServiceResponse;
+        if (serviceResponse == null || serviceResponse.timestamp != sliceStart)
+            serviceResponse = getServiceResponse(sliceStart);
+
+        long nextSliceStart = sliceStart + timeSlice;
+        if (now >= nextSliceStart - timeSlice / 4)
+            signServiceResponseAhead(nextSliceStart);
+        return serviceResponse.serviceResponse;
+    }
+
+    private SignedServiceResponse getServiceResponse(long sliceStart) throws
+            SecurityHandlerException {
+        synchronized (serviceResponseLock) {
+            SignedServiceResponse serviceResponse = currentServiceResponse;
+            if (serviceResponse == null || serviceResponse.timestamp != sliceStart) {
+                // signed ahead unless the component was idle
+                serviceResponse = nextServiceResponse;
+                if (serviceResponse == null || serviceResponse.timestamp != sliceStart)
+                    serviceResponse = new SignedServiceResponse(sliceStart, signServiceResponse(sliceStart));
+                currentServiceResponse = serviceResponse;
+            }
+            return serviceResponse;
+        }
+    }
+
+    private void signServiceResponseAhead(long nextSliceStart) {
+        SignedServiceResponse serviceResponse = nextServiceResponse;
+        if ((serviceResponse != null && serviceResponse.timestamp == nextSliceStart)
+                || !signingNextServiceResponse.compareAndSet(false, true))
+            return;
+        try {
+            signingExecutor.execute(() -> {
+                try {
+                    nextServiceResponse = new SignedServiceResponse(nextSliceStart, signServiceResponse(nextSliceStart));
+                } catch (SecurityHandlerException e) {
+                    // the next slice's first call signs it then
+                    log.warn("Failed to sign the next service response ahead", e);
+                } finally {
+                    signingNextServiceResponse.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            signingNextServiceResponse.set(false);
+            log.warn("Failed to schedule signing the next service response", e);
+        }
+    }
+
+    private String signServiceResponse(long timestamp) throws
+            SecurityHandlerException {
         BoundCredentials localAAMBoundCredentials = getLocalAAMCredentials();
         try {
             // generating the service response
-            return MutualAuthenticationHelper.getServiceResponse(localAAMBoundCredentials.homeCredentials.privateKey, new Date().getTime());
+            return MutualAuthenticationHelper.getServiceResponse(localAAMBoundCredentials.homeCredentials.privateKey, timestamp);
         } catch (NoSuchAlgorithmException e) {
             log.error(e);
             throw new SecurityHandlerException("Failed to generate service response");
@@ -242,29 +378,32 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
         BoundCredentials localAAMBoundCredentials = securityHandler.getAcquiredCredentials().get(localAAM.getAamInstanceId());
         if (localAAMBoundCredentials == null) {
             // making sure a proper certificate is in the keystore
-            securityHandler.getCertificate(
-                    localAAM,
-                    componentOwnerUsername,
-                    componentOwnerPassword,
-                    combinedClientIdentifier);
-            localAAMBoundCredentials = securityHandler.getAcquiredCredentials().get(localAAM.getAamInstanceId());
+            localAAMBoundCredentials = refreshLocalAAMCertificate(null);
         }
 
         //checking if aam certificate changed during the component runtime
 
+        String keystoreAAMCertificate = localAAMBoundCredentials.homeCredentials.homeAAM.getAamCACertificate().getCertificateString();
         Certificate platformCertificate = securityHandler.getComponentCertificate(SecurityConstants.AAM_COMPONENT_NAME,
                 localAAM.getAamInstanceId());
-        if (!platformCertificate.getCertificateString().equals(
-                localAAMBoundCredentials.homeCredentials.homeAAM.getAamCACertificate().getCertificateString())) {
+        if (!platformCertificate.getCertificateString().equals(keystoreAAMCertificate)) {
+            // making sure the difference doesn't come from a stale cached certificate
+            platformCertificate = securityHandler.refreshComponentCertificate(SecurityConstants.AAM_COMPONENT_NAME,
+                    localAAM.getAamInstanceId(), platformCertificate);
+        }
+        if (platformCertificate == null
+                || !platformCertificate.getCertificateString().equals(keystoreAAMCertificate)) {
             log.error(SecurityHandlerException.AAM_CERTIFICATE_DIFFERENT_THAN_IN_KEYSTORE);
             throw new SecurityHandlerException(SecurityHandlerException.AAM_CERTIFICATE_DIFFERENT_THAN_IN_KEYSTORE);
         }
 
         // check that we have a valid token
+        HomeCredentials localAAMHomeCredentials = localAAMBoundCredentials.homeCredentials;
+        Token localToken = localAAMHomeCredentials.homeToken;
         boolean isLocalTokenRefreshNeeded = false;
         try {
-            if (localAAMBoundCredentials.homeCredentials.homeToken == null
-                    || JWTEngine.validateTokenString(localAAMBoundCredentials.homeCredentials.homeToken.getToken()) != ValidationStatus.VALID) {
+            if (localToken == null
+                    || JWTEngine.validateTokenString(localToken.getToken()) != ValidationStatus.VALID) {
                 isLocalTokenRefreshNeeded = true;
             }
         } catch (ValidationException e) {
@@ -277,17 +416,13 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
             // gets the token and puts it in the wallet
             try {
                 try {
-                    securityHandler.login(localAAM);
+                    securityHandler.refreshHomeToken(localAAM, localToken);
                 } catch (SecurityHandlerException e) {
                     if (e.getStatusCode().equals(HttpStatus.UNAUTHORIZED)) {
                         // we need to refresh our certificate
-                        securityHandler.getCertificate(
-                                localAAM,
-                                componentOwnerUsername,
-                                componentOwnerPassword,
-                                combinedClientIdentifier);
+                        refreshLocalAAMCertificate(localAAMHomeCredentials);
                         // and trying to refresh the token with the new credentials
-                        securityHandler.login(localAAM);
+                        securityHandler.refreshHomeToken(localAAM, localToken);
                     }
                 }
                 // fetching updated token from the wallet
@@ -301,6 +436,30 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
         return localAAMBoundCredentials;
     }
 
+    /**
+     * Issues a new certificate for this component, unless a concurrent call already replaced the stale credentials in
+     * the wallet.
+     *
+     * @param staleCredentials missing from the wallet or rejected by the local AAM, null if there were none
+     * @return the credentials from the wallet
+     * @throws SecurityHandlerException on error
+     */
+    private BoundCredentials refreshLocalAAMCertificate(HomeCredentials staleCredentials) throws
+            SecurityHandlerException {
+        synchronized (localAAMCertificateLock) {
+            BoundCredentials localAAMBoundCredentials = securityHandler.getAcquiredCredentials().get(localAAM.getAamInstanceId());
+            if (localAAMBoundCredentials == null || localAAMBoundCredentials.homeCredentials == staleCredentials) {
+                securityHandler.getCertificate(
+                        localAAM,
+                        componentOwnerUsername,
+                        componentOwnerPassword,
+                        combinedClientIdentifier);
+                localAAMBoundCredentials = securityHandler.getAcquiredCredentials().get(localAAM.getAamInstanceId());
+            }
+            return localAAMBoundCredentials;
+        }
+    }
+
     @Override
     public Map<String, OriginPlatformGroupedPlatformMisdeedsReport> getOriginPlatformGroupedPlatformMisdeedsReports(Optional<String> resourcePlatformFilter,
                                                                                                                     Optional<String> searchOriginPlatformFilter) throws
@@ -357,4 +516,14 @@ public class ComponentSecurityHandler implements IComponentSecurityHandler {
                     this);
         return admComponentClient;
     }
+
+    private static final class SignedServiceResponse {
+        private final long timestamp;
+        private final String serviceResponse;
+
+        private SignedServiceResponse(long timestamp, String serviceResponse) {
+            this.timestamp = timestamp;
+            this.serviceResponse = serviceResponse;
+        }
+    }
 }
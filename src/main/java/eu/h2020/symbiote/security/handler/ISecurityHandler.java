@@ -57,6 +57,19 @@ public interface ISecurityHandler {
      */
     Token login(AAM aam) throws SecurityHandlerException, ValidationException;
 
+    /**
+     * Used when the home token from the given AAM is missing or no longer usable, e.g. expired.
+     *
+     * @param aam        AAM instance to get a home token from
+     * @param staleToken the token that is no longer usable, null if there was none
+     * @return home token, implementations sharing the tokens acquired concurrently might return one not requested by
+     * this call
+     * @throws SecurityHandlerException on operation error
+     */
+    default Token refreshHomeToken(AAM aam, Token staleToken) throws SecurityHandlerException, ValidationException {
+        return login(aam);
+    }
+
     /**
      * Login to foreign AAMs (you don't have account in) using home token.
      *
@@ -122,6 +135,24 @@ public interface ISecurityHandler {
                                         String platformIdentifier) throws
             SecurityHandlerException;
 
+    /**
+     * Used when the certificate returned by {@link #getComponentCertificate(String, String)} failed a verification,
+     * e.g. because the component rotated it.
+     *
+     * @param componentIdentifier component identifier or {@link SecurityConstants#AAM_COMPONENT_NAME} for AAM CA certificate
+     * @param platformIdentifier  for a platform component or {@link SecurityConstants#CORE_AAM_INSTANCE_ID} for Symbiote core components
+     * @param staleCertificate    the certificate that failed the verification
+     * @return certificate of the selected component fetched anew from the AAM, implementations limiting how often a
+     * certificate is fetched might return the stale one
+     * @throws SecurityHandlerException on operation error
+     */
+    default Certificate refreshComponentCertificate(String componentIdentifier,
+                                                    String platformIdentifier,
+                                                    Certificate staleCertificate) throws
+            SecurityHandlerException {
+        return getComponentCertificate(componentIdentifier, platformIdentifier);
+    }
+
     AAM getCoreAAMInstance();
 
     /**
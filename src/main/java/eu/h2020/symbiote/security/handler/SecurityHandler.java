@@ -8,6 +8,7 @@ import eu.h2020.symbiote.security.commons.credentials.BoundCredentials;
 import eu.h2020.symbiote.security.commons.credentials.HomeCredentials;
 import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
 import eu.h2020.symbiote.security.commons.exceptions.custom.*;
+import eu.h2020.symbiote.security.commons.jwt.IssuerKeysRegistry;
 import eu.h2020.symbiote.security.communication.AAMClient;
 import eu.h2020.symbiote.security.communication.ADMClient;
 import eu.h2020.symbiote.security.communication.payloads.AAM;
@@ -16,6 +17,8 @@ import eu.h2020.symbiote.security.communication.payloads.FailedFederationAuthori
 import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
 import eu.h2020.symbiote.security.helpers.CryptoHelper;
 import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.helpers.KeyPairPool;
+import eu.h2020.symbiote.security.helpers.ParsedCertificatesCache;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.bouncycastle.asn1.x500.RDN;
@@ -31,6 +34,10 @@ import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static eu.h2020.symbiote.security.helpers.CryptoHelper.FIELDS_DELIMITER;
@@ -49,11 +56,16 @@ public class SecurityHandler implements ISecurityHandler {
 
     private final String platformId;
     //In memory credentials wallet by Home AAM id -> Client ID -> User ID -> Credentials
-    private Map<String, BoundCredentials> credentialsWallet =
-            new HashMap<>();
+    private final Map<String, BoundCredentials> credentialsWallet = new ConcurrentHashMap<>();
     //Associate tokens with credentials
-    private Map<String, BoundCredentials> tokenCredentials = new HashMap<>();
+    private final Map<String, BoundCredentials> tokenCredentials = new ConcurrentHashMap<>();
+    // HOME token acquisitions in progress by Home AAM id, shared by all the threads logging in concurrently
+    private final ConcurrentMap<String, CompletableFuture<Token>> pendingLogins = new ConcurrentHashMap<>();
     private AAM coreAAM = null;
+    private final ComponentCertificatesCache componentCertificatesCache = new ComponentCertificatesCache();
+    private volatile boolean parallelCertificatesPreloading = false;
+    // certificate PEMs of the last fetched AAMs, by AAM instance id and componentId@AAM instance id
+    private volatile Map<String, String> preloadedCertificates = Collections.emptyMap();
 
     /**
      * Creates a new instance of end-user oriented Security Handler
@@ -156,7 +168,43 @@ public class SecurityHandler implements ISecurityHandler {
         }
         return availableAAMsCollection;
     }
+
     public Map<String, AAM> getAvailableAAMs(String aamAddress) throws SecurityHandlerException {
+        Map<String, AAM> availableAAMs = fetchAvailableAAMs(aamAddress);
+        // warming the certificates and keys needed for the validations once the AAMs' certificates changed
+        if (availableAAMs != null) {
+            Map<String, String> certificates = getCertificateStrings(availableAAMs);
+            if (!certificates.equals(preloadedCertificates)) {
+                ParsedCertificatesCache.preload(availableAAMs, parallelCertificatesPreloading);
+                IssuerKeysRegistry.update(availableAAMs);
+                preloadedCertificates = certificates;
+            }
+        }
+        return availableAAMs;
+    }
+
+    private static Map<String, String> getCertificateStrings(Map<String, AAM> availableAAMs) {
+        Map<String, String> certificates = new HashMap<>();
+        for (AAM aam : availableAAMs.values()) {
+            if (aam.getAamCACertificate() != null)
+                certificates.put(aam.getAamInstanceId(), aam.getAamCACertificate().getCertificateString());
+            if (aam.getComponentCertificates() != null)
+                aam.getComponentCertificates().forEach((componentId, certificate) -> {
+                    if (certificate != null)
+                        certificates.put(componentId + "@" + aam.getAamInstanceId(), certificate.getCertificateString());
+                });
+        }
+        return certificates;
+    }
+
+    /**
+     * @param parallel true to parse the fetched AAMs' certificates concurrently
+     */
+    public void setParallelCertificatesPreloading(boolean parallel) {
+        this.parallelCertificatesPreloading = parallel;
+    }
+
+    private Map<String, AAM> fetchAvailableAAMs(String aamAddress) throws SecurityHandlerException {
         // end-client
         if (platformId.isEmpty()) {
             try {
@@ -181,7 +229,69 @@ public class SecurityHandler implements ISecurityHandler {
         }
     }
 
+    /**
+     * Acquires a new HOME token from the given AAM. Concurrent logins to the same AAM collapse into a single request,
+     * whose token (or failure) all the callers share.
+     */
     public Token login(AAM homeAAMId) throws SecurityHandlerException, ValidationException {
+        // a login finishing after this point already gives a fresh enough token
+        return refreshHomeToken(homeAAMId, getHomeToken(homeAAMId.getAamInstanceId()));
+    }
+
+    /**
+     * Acquires a new HOME token from the given AAM, unless the wallet already got a not yet expired token other than
+     * the stale one, e.g. acquired by a concurrent login. Concurrent refreshes of the same AAM collapse into a single
+     * request, whose token (or failure) all the callers share.
+     */
+    @Override
+    public Token refreshHomeToken(AAM homeAAMId, Token staleToken) throws SecurityHandlerException, ValidationException {
+        String aamInstanceId = homeAAMId.getAamInstanceId();
+        CompletableFuture<Token> login = new CompletableFuture<>();
+        CompletableFuture<Token> pendingLogin = pendingLogins.putIfAbsent(aamInstanceId, login);
+        if (pendingLogin != null)
+            return awaitLogin(pendingLogin);
+
+        try {
+            Token token = getHomeToken(aamInstanceId);
+            if (token == null
+                    || (staleToken != null && token.getToken().equals(staleToken.getToken()))
+                    || !token.getClaims().getExpiration().after(new Date()))
+                token = acquireHomeToken(homeAAMId);
+            login.complete(token);
+            return token;
+        } catch (SecurityHandlerException | ValidationException | RuntimeException e) {
+            login.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingLogins.remove(aamInstanceId, login);
+        }
+    }
+
+    private Token getHomeToken(String aamInstanceId) {
+        BoundCredentials credentials = credentialsWallet.get(aamInstanceId);
+        if (credentials == null || credentials.homeCredentials == null)
+            return null;
+        return credentials.homeCredentials.homeToken;
+    }
+
+    private static Token awaitLogin(CompletableFuture<Token> pendingLogin) throws
+            SecurityHandlerException,
+            ValidationException {
+        try {
+            return pendingLogin.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecurityHandlerException("Interrupted while waiting for the log in", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SecurityHandlerException)
+                throw (SecurityHandlerException) e.getCause();
+            if (e.getCause() instanceof ValidationException)
+                throw (ValidationException) e.getCause();
+            throw new SecurityHandlerException("Failed to log in. " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Token acquireHomeToken(AAM homeAAMId) throws SecurityHandlerException, ValidationException {
         BoundCredentials credentials = credentialsWallet.get(homeAAMId.getAamInstanceId());
 
         if (credentials != null && credentials.homeCredentials != null &&
@@ -231,7 +341,7 @@ public class SecurityHandler implements ISecurityHandler {
                 }
             }));
 
-            credentials.foreignTokens = result;
+            credentials.foreignTokens = new ConcurrentHashMap<>(result);
             return result;
 
         } else {
@@ -275,26 +385,41 @@ public class SecurityHandler implements ISecurityHandler {
     @Override
     public Certificate getComponentCertificate(String componentIdentifier, String platformIdentifier) throws
             SecurityHandlerException {
+        return componentCertificatesCache.get(componentIdentifier, platformIdentifier, this::fetchComponentCertificate);
+    }
+
+    @Override
+    public Certificate refreshComponentCertificate(String componentIdentifier,
+                                                   String platformIdentifier,
+                                                   Certificate staleCertificate) throws
+            SecurityHandlerException {
+        return componentCertificatesCache.refresh(componentIdentifier, platformIdentifier, staleCertificate, this::fetchComponentCertificate);
+    }
+
+    /**
+     * @param timeToLive in milliseconds, after which a cached component certificate is fetched again from the AAM, 0 disables the cache
+     */
+    public void setComponentCertificatesTimeToLive(long timeToLive) {
+        componentCertificatesCache.setTimeToLive(timeToLive);
+    }
+
+    /**
+     * @param minimumRefreshInterval in milliseconds, within which a component certificate fetched from the AAM is not
+     *                               fetched again when it fails a verification, 0 fetches it on each failure
+     */
+    public void setComponentCertificatesMinimumRefreshInterval(long minimumRefreshInterval) {
+        componentCertificatesCache.setMinimumRefreshInterval(minimumRefreshInterval);
+    }
+
+    private Certificate fetchComponentCertificate(String componentIdentifier, String platformIdentifier) throws
+            SecurityHandlerException {
         AAMClient aamClient = ClientFactory.getAAMClient(homeAAMAddress);
-        Certificate certificate;
-        /*   temporarily disabling the cache as it causes service response validation errors
-        TODO R4 add forced refresh on failed validation
-        // checking cache
-        if (credentialsWallet.containsKey(platformIdentifier)
-                && credentialsWallet.get(platformIdentifier).homeCredentials.homeAAM.getComponentCertificates().containsKey(componentIdentifier))
-          // fetching from wallet
-          certificate = credentialsWallet.get(platformIdentifier).homeCredentials.homeAAM.getComponentCertificates().get(componentIdentifier);
-        else {
-        */
-        // need to fetch fresh certificate
         try {
-            certificate = new Certificate(aamClient.getComponentCertificate(componentIdentifier, platformIdentifier));
-            //TODO: add new certificate to credentialWallet (create credWallet for platform if missing?)
+            return new Certificate(aamClient.getComponentCertificate(componentIdentifier, platformIdentifier));
         } catch (AAMException | CertificateException e) {
             logger.error(e);
             throw new SecurityHandlerException("Failed to fetch the component certificate from the AAM. " + e.getMessage());
         }
-        return certificate;
     }
 
     @Override
@@ -328,9 +453,9 @@ public class SecurityHandler implements ISecurityHandler {
 
     @Override
     public void clearCachedTokens() {
-        tokenCredentials = new HashMap<>();
+        tokenCredentials.clear();
         credentialsWallet.values().forEach(credential -> {
-            credential.foreignTokens = new HashMap<>();
+            credential.foreignTokens = new ConcurrentHashMap<>();
             credential.homeCredentials.homeToken = null;
         });
     }
@@ -351,7 +476,7 @@ public class SecurityHandler implements ISecurityHandler {
             throw new SecurityHandlerException("Username contains invalid characters");
         }
         try {
-            KeyPair pair = CryptoHelper.createKeyPair();
+            KeyPair pair = KeyPairPool.take();
 
             String csr;
             if (clientId.contains("@")) {
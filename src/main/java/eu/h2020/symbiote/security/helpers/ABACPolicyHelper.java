@@ -1,17 +1,16 @@
 package eu.h2020.symbiote.security.helpers;
 
 import eu.h2020.symbiote.security.accesspolicies.IAccessPolicy;
-import eu.h2020.symbiote.security.commons.Token;
-import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.commons.PolicyCandidateTokens;
+import eu.h2020.symbiote.security.commons.ValidationResult;
+import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
 import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
 import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Created by Nemanja on 18.08.2017.
@@ -32,48 +31,65 @@ public class ABACPolicyHelper {
      */
     public static Map<String, Set<SecurityCredentials>> checkRequestedOperationAccess(Map<String, IAccessPolicy> accessPolicies,
                                                                                       SecurityRequest securityRequest) {
+        return checkRequestedOperationAccess(accessPolicies, securityRequest, false);
+    }
+
+    /**
+     * @param accessPolicies             of the resources that need to be checked against the tokens
+     * @param securityRequest            container for tokens and user credentials which will be checked against access policies
+     * @param deferSignatureVerification if true, the policies are evaluated against the tokens' unverified claims and
+     *                                   only the tokens satisfying a policy get their signatures verified, before the
+     *                                   access is granted. Otherwise all the tokens are verified upfront.
+     * @return set of resources (their identifiers) whose access policies are satisfied with the given credentials
+     */
+    public static Map<String, Set<SecurityCredentials>> checkRequestedOperationAccess(Map<String, IAccessPolicy> accessPolicies,
+                                                                                      SecurityRequest securityRequest,
+                                                                                      boolean deferSignatureVerification) {
 
         Map<String, Set<SecurityCredentials>> authorizedResources = new HashMap<String, Set<SecurityCredentials>>();
 
         // extracting credentials from the security request
-        Map<Token, SecurityCredentials> authzCredentials = new HashMap<>(securityRequest.getSecurityCredentials().size());
+        PolicyCandidateTokens authzTokens = new PolicyCandidateTokens();
         for (SecurityCredentials securityCredentials : securityRequest.getSecurityCredentials()) {
+            // on purpose skipping corrupted/expired tokens instead of jumping out of the whole procedure
+            // as other tokens might be perfectly valid for the business request
+            ParsedJws parsedJws;
             try {
-                authzCredentials.put(new Token(securityCredentials.getToken()), securityCredentials);
-            } catch (ValidationException e) {
-                // on purpose skipping corrupted/expired tokens instead of jumping out of the whole procedure
-                // as other tokens might be perfectly valid for the business request
-                log.debug(e);
+                parsedJws = ParsedJws.decode(securityCredentials.getToken());
+            } catch (MalformedJWTException e) {
+                log.debug(ValidationResult.MALFORMED_TOKEN);
+                continue;
             }
+            if (deferSignatureVerification)
+                authzTokens.addDeferred(parsedJws, securityCredentials);
+            else
+                authzTokens.addVerified(parsedJws, securityCredentials);
         }
 
         // not valid tokens found in the request so no resolution will happen
-        if (authzCredentials.isEmpty())
+        if (authzTokens.isEmpty())
             return authorizedResources;
 
         // attempting to resolve the access policy
         if (accessPolicies != null) {
             for (Map.Entry<String, IAccessPolicy> resource : accessPolicies.entrySet()) {
                 if (resource.getValue() != null) {
-                    Set<Token> validTokens = resource.getValue().isSatisfiedWith(authzCredentials.keySet());
+                    Set<SecurityCredentials> validCredentials = authzTokens.getSatisfyingCredentials(resource.getValue());
                     //Check if any valid token is found for the access policy
-                    if (validTokens.isEmpty()) {
+                    if (validCredentials.isEmpty()) {
                         // the tokens do not match this resource's access policy
                         continue;
                     }
-                    // attach valid tokens to the resource access
-                    Set<SecurityCredentials> validCredentials = new HashSet<SecurityCredentials>();
-                    for (Token t : validTokens) {
-                        validCredentials.add(authzCredentials.get(t));
-                    }
-
                     // access to the resource is authorized
                     authorizedResources.put(resource.getKey(), validCredentials);
                 } else {
                     // resource has a null access policy and therefore any token should satisfy it
-                    Set<SecurityCredentials> validCredentials = new HashSet<>();
-                    validCredentials.add(authzCredentials.values().iterator().next());
-                    authorizedResources.put(resource.getKey(), validCredentials);
+                    SecurityCredentials anyCredentials = authzTokens.getAnyVerifiedCredentials();
+                    if (anyCredentials != null) {
+                        Set<SecurityCredentials> validCredentials = new HashSet<>();
+                        validCredentials.add(anyCredentials);
+                        authorizedResources.put(resource.getKey(), validCredentials);
+                    }
                 }
             }
         }
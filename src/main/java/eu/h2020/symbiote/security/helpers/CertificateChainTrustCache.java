@@ -0,0 +1,177 @@
+package eu.h2020.symbiote.security.helpers;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the {@link CryptoHelper#isClientCertificateChainTrusted(String, String, String)} outcomes, keyed
+ * by the SHA-256 fingerprints of the (core AAM, signing AAM, client) PEM certificates.
+ * <p>
+ * Trusted chains are remembered until the earliest notAfter of their certificates, after which the chain would no
+ * longer validate. Untrusted chains are kept in a separate, smaller cache for a fixed time only, as e.g. a chain
+ * with a certificate that is not yet valid may become trusted later. Lookups need no certificate parsing at all.
+ */
+public class CertificateChainTrustCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+    public static final int DEFAULT_UNTRUSTED_MAXIMUM_SIZE = 256;
+    /**
+     * default time (in milliseconds) an untrusted chain outcome is kept
+     */
+    public static final long DEFAULT_UNTRUSTED_TIME_TO_LIVE = 60000;
+
+    private static final ConcurrentMap<ByteBuffer, Long> trustedChains = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<ByteBuffer, Long> untrustedChains = new ConcurrentHashMap<>();
+    private static final LongAdder hitCount = new LongAdder();
+    private static final LongAdder missCount = new LongAdder();
+    private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private static volatile int untrustedMaximumSize = DEFAULT_UNTRUSTED_MAXIMUM_SIZE;
+    private static volatile long untrustedTimeToLive = DEFAULT_UNTRUSTED_TIME_TO_LIVE;
+
+    private CertificateChainTrustCache() {
+    }
+
+    /**
+     * @param coreAAMCertificateString    trust anchor in PEM format
+     * @param signingAAMCertificateString in PEM format
+     * @param clientCertificateString     in PEM format
+     * @return fingerprint of the chain to be used with the other methods
+     */
+    static ByteBuffer fingerprint(String coreAAMCertificateString,
+                                  String signingAAMCertificateString,
+                                  String clientCertificateString) {
+        try {
+            byte[] coreAAMFingerprint = HashingHelper.digest(HashingHelper.SHA_256, coreAAMCertificateString);
+            byte[] signingAAMFingerprint = HashingHelper.digest(HashingHelper.SHA_256, signingAAMCertificateString);
+            byte[] clientFingerprint = HashingHelper.digest(HashingHelper.SHA_256, clientCertificateString);
+            byte[] chainFingerprint = new byte[coreAAMFingerprint.length + signingAAMFingerprint.length + clientFingerprint.length];
+            System.arraycopy(coreAAMFingerprint, 0, chainFingerprint, 0, coreAAMFingerprint.length);
+            System.arraycopy(signingAAMFingerprint, 0, chainFingerprint, coreAAMFingerprint.length, signingAAMFingerprint.length);
+            System.arraycopy(clientFingerprint, 0, chainFingerprint, coreAAMFingerprint.length + signingAAMFingerprint.length, clientFingerprint.length);
+            return ByteBuffer.wrap(chainFingerprint);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory for every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param chainFingerprint of the chain
+     * @return the remembered outcome or null if the chain has to be verified
+     */
+    static Boolean isTrusted(ByteBuffer chainFingerprint) {
+        long now = System.currentTimeMillis();
+        if (isStored(trustedChains, chainFingerprint, now)) {
+            hitCount.increment();
+            return Boolean.TRUE;
+        }
+        if (isStored(untrustedChains, chainFingerprint, now)) {
+            hitCount.increment();
+            return Boolean.FALSE;
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * @param chainFingerprint of the verified chain
+     * @param trusted          outcome of the verification
+     * @param notAfter         in milliseconds, the earliest expiration of the chain's certificates
+     */
+    static void put(ByteBuffer chainFingerprint, boolean trusted, long notAfter) {
+        long now = System.currentTimeMillis();
+        if (trusted) {
+            if (notAfter > now)
+                put(trustedChains, maximumSize, chainFingerprint, notAfter);
+        } else {
+            long timeToLive = untrustedTimeToLive;
+            if (timeToLive > 0)
+                put(untrustedChains, untrustedMaximumSize, chainFingerprint, now + timeToLive);
+        }
+    }
+
+    /**
+     * @param size maximum number of cached trusted chains
+     */
+    public static void setMaximumSize(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        maximumSize = size;
+    }
+
+    /**
+     * @param size maximum number of cached untrusted chains
+     */
+    public static void setUntrustedMaximumSize(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        untrustedMaximumSize = size;
+    }
+
+    /**
+     * @param timeToLive in milliseconds, how long untrusted chains are remembered, 0 disables the untrusted chains cache
+     */
+    public static void setUntrustedTimeToLive(long timeToLive) {
+        if (timeToLive < 0)
+            throw new IllegalArgumentException("Time to live can't be negative");
+        untrustedTimeToLive = timeToLive;
+        untrustedChains.clear();
+    }
+
+    /**
+     * @return number of cached trusted chains (including expired ones not yet removed)
+     */
+    public static int size() {
+        return trustedChains.size();
+    }
+
+    /**
+     * @return number of cached untrusted chains (including expired ones not yet removed)
+     */
+    public static int untrustedSize() {
+        return untrustedChains.size();
+    }
+
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public static long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * drops all the cached outcomes
+     */
+    public static void clear() {
+        trustedChains.clear();
+        untrustedChains.clear();
+    }
+
+    private static boolean isStored(ConcurrentMap<ByteBuffer, Long> chains, ByteBuffer chainFingerprint, long now) {
+        Long expirationTime = chains.get(chainFingerprint);
+        if (expirationTime == null)
+            return false;
+        if (expirationTime <= now) {
+            chains.remove(chainFingerprint, expirationTime);
+            return false;
+        }
+        return true;
+    }
+
+    private static void put(ConcurrentMap<ByteBuffer, Long> chains, int size, ByteBuffer chainFingerprint, long expirationTime) {
+        // making room for the new chain, which one goes doesn't matter much as the set of chains is small and stable
+        if (chains.size() >= size) {
+            Iterator<ByteBuffer> iterator = chains.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        chains.put(chainFingerprint, expirationTime);
+    }
+}
@@ -3,11 +3,7 @@ package eu.h2020.symbiote.security.helpers;
 import eu.h2020.symbiote.security.commons.SecurityConstants;
 import eu.h2020.symbiote.security.commons.credentials.HomeCredentials;
 import eu.h2020.symbiote.security.commons.exceptions.custom.InvalidArgumentsException;
-import io.jsonwebtoken.JwtBuilder;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import eu.h2020.symbiote.security.commons.jwt.ES256Engine;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openssl.PEMKeyPair;
 import org.bouncycastle.openssl.PEMParser;
@@ -24,6 +20,7 @@ import org.bouncycastle.util.io.pem.PemReader;
 
 import javax.security.auth.x500.X500Principal;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.cert.*;
 import java.security.spec.ECGenParameterSpec;
@@ -56,17 +53,9 @@ public class CryptoHelper {
      * @throws SecurityException error during creation of loginRequest
      */
     public static String buildHomeTokenAcquisitionRequest(HomeCredentials homeCredentials) {
-        ECDSAHelper.enableECDSAProvider();
-
         try {
-            JwtBuilder jwtBuilder = Jwts.builder();
-            jwtBuilder.setIssuer(homeCredentials.username);
-            jwtBuilder.setSubject(homeCredentials.clientIdentifier);
-            jwtBuilder.setIssuedAt(new Date());
-            jwtBuilder.setExpiration(new Date(System.currentTimeMillis() + 60000));
-            jwtBuilder.signWith(SignatureAlgorithm.ES256, homeCredentials.privateKey);
-
-            return jwtBuilder.compact();
+            return ES256Engine.sign(buildAcquisitionRequestClaims(homeCredentials.username, homeCredentials.clientIdentifier),
+                    homeCredentials.privateKey);
         } catch (Exception e) {
             throw new SecurityException(e.getMessage(), e.getCause());
         }
@@ -78,22 +67,25 @@ public class CryptoHelper {
      * @throws SecurityException error during creation of loginRequest
      */
     public static String buildCouponAcquisitionRequest(HomeCredentials homeCredentials, String platformId) {
-        ECDSAHelper.enableECDSAProvider();
-
         try {
-            JwtBuilder jwtBuilder = Jwts.builder();
-            jwtBuilder.setIssuer(homeCredentials.username + CryptoHelper.FIELDS_DELIMITER + homeCredentials.clientIdentifier);
-            jwtBuilder.setSubject(platformId);
-            jwtBuilder.setIssuedAt(new Date());
-            jwtBuilder.setExpiration(new Date(System.currentTimeMillis() + 60000));
-            jwtBuilder.signWith(SignatureAlgorithm.ES256, homeCredentials.privateKey);
-
-            return jwtBuilder.compact();
+            return ES256Engine.sign(buildAcquisitionRequestClaims(homeCredentials.username + CryptoHelper.FIELDS_DELIMITER + homeCredentials.clientIdentifier, platformId),
+                    homeCredentials.privateKey);
         } catch (Exception e) {
             throw new SecurityException(e.getMessage(), e.getCause());
         }
     }
 
+    private static Map<String, Object> buildAcquisitionRequestClaims(String issuer, String subject) {
+        long now = System.currentTimeMillis();
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("iss", issuer);
+        claims.put("sub", subject);
+        // JWT dates are in seconds, the request is valid for a minute
+        claims.put("iat", now / 1000);
+        claims.put("exp", (now + 60000) / 1000);
+        return claims;
+    }
+
     public static String convertX509ToPEM(X509Certificate signedCertificate) throws IOException {
         StringWriter signedCertificatePEMDataStringWriter = new StringWriter();
         JcaPEMWriter pemWriter = new JcaPEMWriter(signedCertificatePEMDataStringWriter);
@@ -114,8 +106,7 @@ public class CryptoHelper {
         StringReader reader = new StringReader(pemCertificate);
         PemReader pr = new PemReader(reader);
         PemObject pemObject = pr.readPemObject();
-        X509CertificateHolder certificateHolder = new X509CertificateHolder(pemObject.getContent());
-        return new JcaX509CertificateConverter().setProvider(PROVIDER_NAME).getCertificate(certificateHolder);
+        return (X509Certificate) ECDSAHelper.getCertificateFactory().generateCertificate(new ByteArrayInputStream(pemObject.getContent()));
     }
 
     public static PrivateKey convertPEMToPrivateKey(String pemPrivatekey) throws IOException {
@@ -239,6 +230,16 @@ public class CryptoHelper {
         return csr;
     }
 
+    /**
+     * Checks that the client certificate was issued by the signing AAM, whose certificate was issued by the core AAM,
+     * or directly by the core AAM if the signing AAM is the core AAM itself. The outcomes are remembered in the
+     * {@link CertificateChainTrustCache}.
+     *
+     * @param coreAAMCertificateString    trust anchor in PEM format
+     * @param signingAAMCertificateString in PEM format
+     * @param clientCertificateString     in PEM format
+     * @return true if the chain is trusted
+     */
     public static boolean isClientCertificateChainTrusted(String coreAAMCertificateString,
                                                           String signingAAMCertificateString,
                                                           String clientCertificateString) throws
@@ -247,10 +248,46 @@ public class CryptoHelper {
             NoSuchProviderException,
             IOException {
 
-        // convert certificates to X509
-        X509Certificate coreAAMCertificate = CryptoHelper.convertPEMToX509(coreAAMCertificateString);
-        X509Certificate clientCertificate = CryptoHelper.convertPEMToX509(clientCertificateString);
-        X509Certificate signingAAMCertificate = CryptoHelper.convertPEMToX509(signingAAMCertificateString);
+        ByteBuffer chainFingerprint = CertificateChainTrustCache.fingerprint(coreAAMCertificateString,
+                signingAAMCertificateString,
+                clientCertificateString);
+        Boolean cachedTrust = CertificateChainTrustCache.isTrusted(chainFingerprint);
+        if (cachedTrust != null)
+            return cachedTrust;
+
+        ParsedCertificatesCache.ParsedCertificate parsedCoreAAMCertificate = ParsedCertificatesCache.parse(coreAAMCertificateString);
+        ParsedCertificatesCache.ParsedCertificate parsedSigningAAMCertificate = ParsedCertificatesCache.parse(signingAAMCertificateString);
+        ParsedCertificatesCache.ParsedCertificate parsedClientCertificate = ParsedCertificatesCache.parse(clientCertificateString);
+        X509Certificate coreAAMCertificate = parsedCoreAAMCertificate.getX509Certificate();
+        X509Certificate signingAAMCertificate = parsedSigningAAMCertificate.getX509Certificate();
+        X509Certificate clientCertificate = parsedClientCertificate.getX509Certificate();
+        boolean signedByCoreAAM = coreAAMCertificateString.equals(signingAAMCertificateString);
+
+        // symbIoTe shaped chains are verified directly, PKIX path building only for the unusual ones
+        Boolean trusted = SymbioteCertificateChainVerifier.isTrusted(parsedCoreAAMCertificate,
+                parsedSigningAAMCertificate,
+                parsedClientCertificate,
+                signedByCoreAAM);
+        if (trusted == null)
+            trusted = isClientCertificateChainTrustedByPKIX(coreAAMCertificate,
+                    signingAAMCertificate,
+                    clientCertificate,
+                    signedByCoreAAM);
+        long notAfter = Math.min(coreAAMCertificate.getNotAfter().getTime(),
+                Math.min(signingAAMCertificate.getNotAfter().getTime(), clientCertificate.getNotAfter().getTime()));
+        CertificateChainTrustCache.put(chainFingerprint, trusted, notAfter);
+        return trusted;
+    }
+
+    /**
+     * General PKIX verification of the chain, the reference for the {@link SymbioteCertificateChainVerifier}
+     */
+    static boolean isClientCertificateChainTrustedByPKIX(X509Certificate coreAAMCertificate,
+                                                         X509Certificate signingAAMCertificate,
+                                                         X509Certificate clientCertificate,
+                                                         boolean signedByCoreAAM) throws
+            NoSuchAlgorithmException,
+            NoSuchProviderException {
 
         // Create the selector that specifies the starting certificate
         X509CertSelector target = new X509CertSelector();
@@ -286,7 +323,7 @@ public class CryptoHelper {
             CertPathBuilder builder = CertPathBuilder.getInstance("PKIX", "BC");
             PKIXCertPathBuilderResult result = (PKIXCertPathBuilderResult) builder.build(params);
             // path should have 1 cert in symbIoTe architecture (if client is Core component - used in componentSecurityHandler)
-            if (coreAAMCertificateString.equals(signingAAMCertificateString)) {
+            if (signedByCoreAAM) {
                 return result.getCertPath().getCertificates().size() == 1;
             }
             // path should have 2 certs in symbIoTe architecture
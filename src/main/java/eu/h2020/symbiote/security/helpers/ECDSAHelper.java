@@ -1,18 +1,118 @@
 package eu.h2020.symbiote.security.helpers;
 
-import java.security.Security;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.*;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Utility class with methods making sure Elliptic Curve Digital Signature Algorithm works.
+ * <p>
+ * The Bouncy Castle provider is installed only once and the JCA engines bound to it are cached per thread, so that
+ * concurrent validations don't serialize on the global provider list lookups. The cached engines must not be shared
+ * between threads and each use must be completed before the same engine is requested again.
+ *
  * @author Mikołaj Dobski (PSNC)
  */
 public class ECDSAHelper {
 
+    private static final String EC_KEY_ALGORITHM = "EC";
+    private static final String X509_CERTIFICATE_TYPE = "X.509";
+
+    private static final ThreadLocal<KeyFactory> keyFactories = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyFactory.getInstance(EC_KEY_ALGORITHM, getProvider());
+        } catch (NoSuchAlgorithmException e) {
+            // Bouncy Castle always provides EC keys
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<CertificateFactory> certificateFactories = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance(X509_CERTIFICATE_TYPE, getProvider());
+        } catch (CertificateException e) {
+            // Bouncy Castle always provides X.509 certificates
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<Map<String, MessageDigest>> messageDigests = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Signature>> signatures = ThreadLocal.withInitial(HashMap::new);
+
     /**
      * SymbIoTe requires Bouncy Castle Security provider to handle Elliptic Curve Digital Signature Algorithm in
-     * Certificates
+     * Certificates. The provider is installed on the first call, the following ones are no-ops.
      */
     public static void enableECDSAProvider() {
-        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+        getProvider();
+    }
+
+    /**
+     * @return the installed Bouncy Castle provider
+     */
+    public static Provider getProvider() {
+        return ProviderHolder.PROVIDER;
+    }
+
+    /**
+     * @return this thread's EC key factory
+     */
+    public static KeyFactory getKeyFactory() {
+        return keyFactories.get();
+    }
+
+    /**
+     * @return this thread's X.509 certificate factory
+     */
+    public static CertificateFactory getCertificateFactory() {
+        return certificateFactories.get();
+    }
+
+    /**
+     * @param algorithm of the digest, e.g. SHA-256
+     * @return this thread's reset digest
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public static MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> threadDigests = messageDigests.get();
+        MessageDigest messageDigest = threadDigests.get(algorithm);
+        if (messageDigest == null) {
+            messageDigest = MessageDigest.getInstance(algorithm, getProvider());
+            threadDigests.put(algorithm, messageDigest);
+        } else {
+            messageDigest.reset();
+        }
+        return messageDigest;
+    }
+
+    /**
+     * @param algorithm of the signature, e.g. SHA256withECDSA
+     * @return this thread's signature, it has to be initialized for signing or verification before use
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public static Signature getSignature(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, Signature> threadSignatures = signatures.get();
+        Signature signature = threadSignatures.get(algorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm, getProvider());
+            threadSignatures.put(algorithm, signature);
+        }
+        return signature;
+    }
+
+    private static final class ProviderHolder {
+        // initialized exactly once by the class loader, reads afterwards need no synchronization
+        private static final Provider PROVIDER = installProvider();
+
+        private static Provider installProvider() {
+            Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+            if (provider != null)
+                return provider;
+            Security.addProvider(new BouncyCastleProvider());
+            // someone else might have installed it in the meantime
+            return Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+        }
     }
 }
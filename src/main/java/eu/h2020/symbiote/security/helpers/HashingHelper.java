@@ -0,0 +1,168 @@
+package eu.h2020.symbiote.security.helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class hashing the values exchanged during the mutual authentication and SDEV procedures.
+ * <p>
+ * The values are fed to this thread's digest (see {@link ECDSAHelper#getMessageDigest(String)}) through a thread
+ * local buffer, without building intermediate strings, and the hex form of a digest is produced only when it has
+ * to be put in a claim. Received hex hashes are compared with the digests in constant time.
+ */
+public class HashingHelper {
+
+    public static final String SHA_256 = "SHA-256";
+    public static final String SHA_1 = "SHA-1";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    // larger values get a temporary buffer, so that a single huge value doesn't stay pinned to the thread
+    static final int MAXIMUM_KEPT_BUFFER_SIZE = 16 * 1024;
+    // the longest long, Long.MIN_VALUE, has 19 digits and a sign
+    private static final int MAXIMUM_LONG_LENGTH = 20;
+
+    private static final ThreadLocal<byte[][]> buffers = ThreadLocal.withInitial(() -> new byte[][]{new byte[INITIAL_BUFFER_SIZE]});
+
+    private HashingHelper() {
+    }
+
+    /**
+     * @param algorithm of the digest, e.g. {@link #SHA_256}
+     * @param value     whose UTF-8 representation is hashed
+     * @return the digest of the value
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public static byte[] digest(String algorithm,
+                                CharSequence value) throws
+            NoSuchAlgorithmException {
+        byte[] buffer = buffer(value.length());
+        int length = putChars(buffer, 0, value);
+        if (length < 0)
+            return ECDSAHelper.getMessageDigest(algorithm).digest(value.toString().getBytes(StandardCharsets.UTF_8));
+        MessageDigest messageDigest = ECDSAHelper.getMessageDigest(algorithm);
+        messageDigest.update(buffer, 0, length);
+        return messageDigest.digest();
+    }
+
+    /**
+     * @param algorithm of the digest, e.g. {@link #SHA_256}
+     * @param value     whose UTF-8 representation is hashed, e.g. a token
+     * @param timestamp whose decimal digits are hashed right after the value
+     * @return the digest of the value followed by the timestamp, as if they were concatenated in a string
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public static byte[] digest(String algorithm,
+                                CharSequence value,
+                                long timestamp) throws
+            NoSuchAlgorithmException {
+        byte[] buffer = buffer(value.length() + MAXIMUM_LONG_LENGTH);
+        int length = putChars(buffer, 0, value);
+        if (length < 0)
+            return ECDSAHelper.getMessageDigest(algorithm).digest((value.toString() + timestamp).getBytes(StandardCharsets.UTF_8));
+        length = putDigits(buffer, length, timestamp);
+        MessageDigest messageDigest = ECDSAHelper.getMessageDigest(algorithm);
+        messageDigest.update(buffer, 0, length);
+        return messageDigest.digest();
+    }
+
+    /**
+     * @param timestamp whose decimal digits are hashed
+     * @return SHA-256 digest of the timestamp's decimal representation
+     * @throws NoSuchAlgorithmException if SHA-256 is not supported
+     */
+    public static byte[] sha256(long timestamp) throws
+            NoSuchAlgorithmException {
+        return digest(SHA_256, "", timestamp);
+    }
+
+    /**
+     * @param digest to be encoded
+     * @return lower case hexadecimal representation of the digest
+     */
+    public static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Compares the digest with a received hex hash in time independent of their content.
+     *
+     * @param digest  calculated locally
+     * @param hexHash received, e.g. in a claim, in lower case hexadecimal representation
+     * @return true if the hex hash represents the digest
+     */
+    public static boolean matchesHex(byte[] digest,
+                                     String hexHash) {
+        if (hexHash == null || hexHash.length() != digest.length * 2)
+            return false;
+        int difference = 0;
+        for (int i = 0; i < digest.length; i++) {
+            difference |= HEX_DIGITS[(digest[i] >> 4) & 0x0f] ^ hexHash.charAt(2 * i);
+            difference |= HEX_DIGITS[digest[i] & 0x0f] ^ hexHash.charAt(2 * i + 1);
+        }
+        return difference == 0;
+    }
+
+    private static byte[] buffer(int minimumSize) {
+        if (minimumSize > MAXIMUM_KEPT_BUFFER_SIZE)
+            return new byte[minimumSize];
+        byte[][] holder = buffers.get();
+        if (holder[0].length < minimumSize)
+            holder[0] = new byte[Math.min(Math.max(minimumSize, holder[0].length * 2), MAXIMUM_KEPT_BUFFER_SIZE)];
+        return holder[0];
+    }
+
+    /**
+     * @return size of this thread's kept buffer
+     */
+    static int keptBufferSize() {
+        return buffers.get()[0].length;
+    }
+
+    /**
+     * @return the position after the written chars or -1 if the value is not ASCII and needs a proper UTF-8 encoder
+     */
+    private static int putChars(byte[] buffer, int position, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80)
+                return -1;
+            buffer[position++] = (byte) c;
+        }
+        return position;
+    }
+
+    private static int putDigits(byte[] buffer, int position, long value) {
+        if (value == Long.MIN_VALUE) {
+            byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(digits, 0, buffer, position, digits.length);
+            return position + digits.length;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int end = position + digitsCount(value);
+        int i = end;
+        do {
+            buffer[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return end;
+    }
+
+    private static int digitsCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,172 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional pool of pre-generated EC key pairs for the certificate enrollment.
+ * <p>
+ * When a platform restarts, its components request their certificates at the same moment and the key generation
+ * dominates the startup. Once {@link #enable(int, int) enabled}, a background thread keeps between the low and the
+ * high watermark of key pairs ready, generated from a single seeded {@link SecureRandom}. Each pooled key pair is
+ * handed out exactly once and dropped together with the pool when it is disabled. When the pool is disabled or
+ * drained, the key pairs are generated on demand.
+ */
+public class KeyPairPool {
+
+    public static final int DEFAULT_LOW_WATERMARK = 4;
+    public static final int DEFAULT_HIGH_WATERMARK = 16;
+
+    private static final Log log = LogFactory.getLog(KeyPairPool.class);
+    private static final LongAdder pooledCount = new LongAdder();
+    private static final LongAdder generatedCount = new LongAdder();
+    private static volatile Filler filler;
+
+    private KeyPairPool() {
+    }
+
+    /**
+     * starts filling the pool using the default watermarks
+     */
+    public static void enable() throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+        enable(DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK);
+    }
+
+    /**
+     * starts filling the pool, replacing the already enabled one
+     *
+     * @param lowWatermark  number of pooled key pairs below which the pool is refilled
+     * @param highWatermark number of key pairs the pool is refilled to
+     */
+    public static synchronized void enable(int lowWatermark, int highWatermark) throws
+            NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException {
+        if (lowWatermark <= 0 || lowWatermark > highWatermark)
+            throw new IllegalArgumentException("Watermarks must satisfy 0 < low <= high");
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(SecurityConstants.KEY_PAIR_GEN_ALGORITHM, ECDSAHelper.getProvider());
+        generator.initialize(new ECGenParameterSpec(SecurityConstants.CURVE_NAME), new SecureRandom());
+        disable();
+        filler = new Filler(generator, lowWatermark, highWatermark);
+        filler.start();
+    }
+
+    /**
+     * stops filling the pool and drops the pooled key pairs
+     */
+    public static synchronized void disable() {
+        if (filler != null) {
+            filler.stop();
+            filler = null;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return filler != null;
+    }
+
+    /**
+     * @return a key pair nobody else got, from the pool if available
+     */
+    public static KeyPair take() throws
+            NoSuchProviderException,
+            NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException {
+        Filler currentFiller = filler;
+        if (currentFiller != null) {
+            KeyPair pair = currentFiller.poll();
+            if (pair != null) {
+                pooledCount.increment();
+                return pair;
+            }
+        }
+        generatedCount.increment();
+        return CryptoHelper.createKeyPair();
+    }
+
+    /**
+     * @return number of key pairs ready in the pool
+     */
+    public static int size() {
+        Filler currentFiller = filler;
+        return currentFiller == null ? 0 : currentFiller.pairs.size();
+    }
+
+    /**
+     * @return number of key pairs handed out from the pool
+     */
+    public static long getPooledCount() {
+        return pooledCount.sum();
+    }
+
+    /**
+     * @return number of key pairs generated on demand
+     */
+    public static long getGeneratedCount() {
+        return generatedCount.sum();
+    }
+
+    private static final class Filler implements Runnable {
+        private final KeyPairGenerator generator;
+        private final int lowWatermark;
+        private final int highWatermark;
+        private final BlockingQueue<KeyPair> pairs = new LinkedBlockingQueue<>();
+        private final Thread thread = new Thread(this, "symbiote-key-pair-pool");
+        private volatile boolean stopped;
+
+        private Filler(KeyPairGenerator generator, int lowWatermark, int highWatermark) {
+            this.generator = generator;
+            this.lowWatermark = lowWatermark;
+            this.highWatermark = highWatermark;
+            thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() {
+            stopped = true;
+            thread.interrupt();
+            pairs.clear();
+        }
+
+        private KeyPair poll() {
+            KeyPair pair = pairs.poll();
+            if (pairs.size() < lowWatermark) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            return pair;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    // the generator is used by this thread only
+                    while (!stopped && pairs.size() < highWatermark)
+                        pairs.add(generator.generateKeyPair());
+                    synchronized (this) {
+                        while (!stopped && pairs.size() >= lowWatermark)
+                            wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Key pair pool stopped, key pairs will be generated on demand", e);
+                stopped = true;
+            }
+            if (stopped)
+                pairs.clear();
+        }
+    }
+}
@@ -2,26 +2,22 @@ package eu.h2020.symbiote.security.helpers;
 
 import eu.h2020.symbiote.security.commons.Certificate;
 import eu.h2020.symbiote.security.commons.Token.Type;
+import eu.h2020.symbiote.security.commons.ValidationResult;
 import eu.h2020.symbiote.security.commons.credentials.AuthorizationCredentials;
 import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
 import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
 import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
 import eu.h2020.symbiote.security.commons.jwt.JWTClaims;
-import eu.h2020.symbiote.security.commons.jwt.JWTEngine;
+import eu.h2020.symbiote.security.commons.jwt.ES256Engine;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
 import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
 import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
-import io.jsonwebtoken.JwtBuilder;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.bouncycastle.util.encoders.Hex;
 
-import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
 
 
@@ -42,6 +38,33 @@ public class MutualAuthenticationHelper {
     public static long SERVICE_RESPONSE_EXPIRATION_TIME = 60;
     private static SecureRandom random = new SecureRandom();
     private static Log log = LogFactory.getLog(MutualAuthenticationHelper.class);
+    private static volatile VerifiedSecurityRequestsCache verifiedSecurityRequestsCache = null;
+    private static final ServiceResponseVerificationTimings serviceResponseVerificationTimings = new ServiceResponseVerificationTimings();
+
+    /**
+     * Enables the memo of security requests that passed {@link #verifySecurityRequest(SecurityRequest)}, so that
+     * repeated deliveries of the same request (e.g. fanned out to many resources or retried) skip the verification
+     * until its challenges expire. Disabled by default.
+     *
+     * @param maximumSize of the memo, entries closest to their expiration are evicted when it is exceeded
+     */
+    public static void enableVerifiedSecurityRequestsCache(int maximumSize) {
+        verifiedSecurityRequestsCache = new VerifiedSecurityRequestsCache(maximumSize);
+    }
+
+    /**
+     * Disables and drops the verified security requests memo
+     */
+    public static void disableVerifiedSecurityRequestsCache() {
+        verifiedSecurityRequestsCache = null;
+    }
+
+    /**
+     * @return the verified security requests memo (e.g. to read its statistics) or null if it is disabled
+     */
+    public static VerifiedSecurityRequestsCache getVerifiedSecurityRequestsCache() {
+        return verifiedSecurityRequestsCache;
+    }
 
     /**
      * Utility class to hash a string with SHA-256
@@ -52,12 +75,7 @@ public class MutualAuthenticationHelper {
     public static String hashSHA256(String stringToHash) throws
             NoSuchAlgorithmException {
 
-        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-        byte[] byteHash = messageDigest.digest(stringToHash.getBytes(StandardCharsets.UTF_8));
-        String hexHash = new String(Hex.encode(byteHash)); // byte to hex converter to get the hashed value in hexadecimal
-        messageDigest.reset();
-
-        return hexHash;
+        return HashingHelper.toHex(HashingHelper.digest(HashingHelper.SHA_256, stringToHash));
     }
 
     /**
@@ -85,18 +103,17 @@ public class MutualAuthenticationHelper {
             AuthorizationCredentials credentials = iteratorAC.next();
 
             String token = credentials.authorizationToken.toString();
-            String hexHash = hashSHA256(credentials.authorizationToken.toString() + timestampMilliseconds);
-
-            JwtBuilder jwtBuilder = Jwts.builder();
-            jwtBuilder.setId(String.valueOf(random.nextInt())); // random -> jti
-            jwtBuilder.setSubject(credentials.authorizationToken.getClaims().getId()); // token jti -> sub
-            jwtBuilder.setIssuer(credentials.authorizationToken.getClaims().getSubject()); // token sub -> iss
-            jwtBuilder.claim("ipk", credentials.authorizationToken.getClaims().get("spk")); // token spk -> ipk
-            jwtBuilder.claim("hash", hexHash); // SHA256(token+timestamp)
-            jwtBuilder.setIssuedAt(timestampDate); // iat
-            jwtBuilder.setExpiration(expiryDate);  // exp
-            jwtBuilder.signWith(SignatureAlgorithm.ES256, credentials.homeCredentials.privateKey);
-            String authenticationChallenge = jwtBuilder.compact();
+            String hexHash = HashingHelper.toHex(HashingHelper.digest(HashingHelper.SHA_256, token, timestampMilliseconds));
+
+            Map<String, Object> challengeClaims = new LinkedHashMap<>();
+            challengeClaims.put("jti", String.valueOf(random.nextInt())); // random -> jti
+            challengeClaims.put("sub", credentials.authorizationToken.getClaims().getId()); // token jti -> sub
+            challengeClaims.put("iss", credentials.authorizationToken.getClaims().getSubject()); // token sub -> iss
+            challengeClaims.put("ipk", credentials.authorizationToken.getClaims().get("spk")); // token spk -> ipk
+            challengeClaims.put("hash", hexHash); // SHA256(token+timestamp)
+            challengeClaims.put("iat", timestampMilliseconds / 1000); // iat
+            challengeClaims.put("exp", expiryDate.getTime() / 1000);  // exp
+            String authenticationChallenge = ES256Engine.sign(challengeClaims, credentials.homeCredentials.privateKey);
 
             if (attachCertificates) {
                 String clientCertificate = credentials.homeCredentials.certificate.getCertificateString();
@@ -136,79 +153,112 @@ public class MutualAuthenticationHelper {
             MalformedJWTException,
             ValidationException,
             InvalidKeySpecException {
+        return verifySecurityRequest(securityRequest).getStatusOrThrow() == ValidationStatus.VALID;
+    }
+
+    /**
+     * Used by the service to handle the challenge verification, without throwing on invalid requests.
+     * <p>
+     * Each token and challenge is decoded once and all the checks decided from their claims (expiration, matching
+     * claims, challenge hash and age) run before any signature is verified. The token and the challenge signatures
+     * are then verified once each. Requests already found in the memo enabled with
+     * {@link #enableVerifiedSecurityRequestsCache(int)} skip all of it.
+     *
+     * @param securityRequest contains client tokens and "challenge" for client authentication
+     * @return {@link ValidationResult#VALID} if the client should be in possession of the given tokens, the
+     * status of the first invalid token or challenge, or an error if they couldn't be validated at all
+     */
+    public static ValidationResult verifySecurityRequest(SecurityRequest securityRequest) {
 
-        Long timestamp2 = new Date().getTime();
+        long timestamp2 = System.currentTimeMillis();
         // JWT rounds to seconds
         timestamp2 = timestamp2 - timestamp2 % 1000;
-        Long timestamp1 = securityRequest.getTimestamp();
-
-        Set<SecurityCredentials> securityCredentialsSet = securityRequest.getSecurityCredentials();
-        Iterator<SecurityCredentials> iteratorSCS = securityCredentialsSet.iterator();
-
-        // guest token scenario
-        if (securityCredentialsSet.size() == 1) {
-            Type tokenType = Type.valueOf(JWTEngine.getClaimsFromToken(securityCredentialsSet.iterator().next().getToken()).getTtyp());
-            if (tokenType.equals(Type.GUEST))
-                return true;
-        }
+        long timestamp1 = securityRequest.getTimestamp();
+        long thresholdMilis = SERVICE_RESPONSE_EXPIRATION_TIME * 1000;
+        // the challenges' age is the same for all the credentials
+        boolean challengeTimely = timestamp2 - timestamp1 < thresholdMilis;
 
-        // proper tokens scenario
-        while (iteratorSCS.hasNext()) {
+        VerifiedSecurityRequestsCache verifiedRequestsCache = verifiedSecurityRequestsCache;
+        if (verifiedRequestsCache != null && challengeTimely && verifiedRequestsCache.isVerified(securityRequest))
+            return ValidationResult.VALID;
+        // the request would pass the verification until the challenges or any of the tokens expire
+        long expirationTime = timestamp1 + thresholdMilis;
 
-            SecurityCredentials securityCredentialsSetElement = iteratorSCS.next();
-            KeyFactory keyFactory = KeyFactory.getInstance("EC");
-
-            // tokens' sanity check
-            ValidationStatus authorizationTokenValidationStatus = JWTEngine.validateTokenString(securityCredentialsSetElement.getToken());
-            ValidationStatus challengeValidationStatus = JWTEngine.validateTokenString(securityCredentialsSetElement.getAuthenticationChallenge());
-            if (authorizationTokenValidationStatus != ValidationStatus.VALID || challengeValidationStatus != ValidationStatus.VALID)
-                return false;
-
-            // claims extraction
-            JWTClaims claimsFromAuthorizationToken = JWTEngine.getClaimsFromToken(securityCredentialsSetElement.getToken());
-            JWTClaims claimsFromChallengeToken = JWTEngine.getClaimsFromToken(securityCredentialsSetElement.getAuthenticationChallenge());
-
-            X509EncodedKeySpec keySpecSpk = new X509EncodedKeySpec(Base64.getDecoder().decode(claimsFromAuthorizationToken.getSpk()));
-            PublicKey applicationPublicKey = keyFactory.generatePublic(keySpecSpk);
-
-            String challengeJWS = securityCredentialsSetElement.getAuthenticationChallenge();
-            String challengeHash = Jwts.parser().setSigningKey(applicationPublicKey).parseClaimsJws(challengeJWS).getBody().get("hash").toString();
-            String calculatedHash = hashSHA256(securityCredentialsSetElement.getToken() + timestamp1.toString());
-            Long deltaT = timestamp2 - timestamp1;
-            Long thresholdMilis = SERVICE_RESPONSE_EXPIRATION_TIME * 1000;
-
-            // check that challengeJWS matches the authorization token
-
-            // token jti -> sub
-            if (!claimsFromAuthorizationToken.getJti().equals(claimsFromChallengeToken.getSub()))
-                return false;
-            // token sub -> iss
-            if (!claimsFromAuthorizationToken.getSub().equals(claimsFromChallengeToken.getIss()))
-                return false;
-            // timestamp1 in iat
-            if (!claimsFromChallengeToken.getIat().equals(timestamp1))
-                return false;
-            // threshold included in exp
-            if (!claimsFromChallengeToken.getExp().equals(timestamp1 + thresholdMilis))
-                return false;
-            // token spk -> ipk
-            if (!claimsFromAuthorizationToken.getSpk().equals(claimsFromChallengeToken.getIpk()))
-                return false;
-
-            // check challenge is ok SHA256(token+timestamp)
-            if (!Objects.equals(calculatedHash, challengeHash) || (deltaT >= thresholdMilis)) {
-                return false;
-            }
-
-            // signature match - token SPK -> challenge IPK & sign
-            X509EncodedKeySpec keySpecIpk = new X509EncodedKeySpec(Base64.getDecoder().decode(claimsFromAuthorizationToken.getSpk()));
-            PublicKey challengeIssuerPublicKey = keyFactory.generatePublic(keySpecIpk);
-            if (JWTEngine.validateTokenString(challengeJWS, challengeIssuerPublicKey) != ValidationStatus.VALID) {
-                return false;
+        Set<SecurityCredentials> securityCredentialsSet = securityRequest.getSecurityCredentials();
+        try {
+            for (SecurityCredentials securityCredentialsSetElement : securityCredentialsSet) {
+
+                // each JWS is decoded only once
+                ParsedJws authorizationTokenJws = ParsedJws.decode(securityCredentialsSetElement.getToken());
+                JWTClaims claimsFromAuthorizationToken = authorizationTokenJws.getJwtClaims();
+
+                // guest token scenario
+                if (securityCredentialsSet.size() == 1
+                        && Type.GUEST.toString().equals(claimsFromAuthorizationToken.getTtyp()))
+                    return ValidationResult.VALID;
+
+                ParsedJws challengeJws = ParsedJws.decode(securityCredentialsSetElement.getAuthenticationChallenge());
+                JWTClaims claimsFromChallengeToken = challengeJws.getJwtClaims();
+
+                // tokens' sanity check from their claims
+                ValidationResult authorizationTokenValidationResult = authorizationTokenJws.getPreValidationResult();
+                if (!authorizationTokenValidationResult.isValid())
+                    return authorizationTokenValidationResult;
+                ValidationResult challengeValidationResult = challengeJws.getPreValidationResult();
+                if (!challengeValidationResult.isValid())
+                    return challengeValidationResult;
+
+                // check that challengeJWS matches the authorization token
+
+                // token jti -> sub
+                if (!Objects.equals(claimsFromAuthorizationToken.getJti(), claimsFromChallengeToken.getSub()))
+                    return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+                // token sub -> iss
+                if (!Objects.equals(claimsFromAuthorizationToken.getSub(), claimsFromChallengeToken.getIss()))
+                    return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+                // timestamp1 in iat
+                if (claimsFromChallengeToken.getIat() != timestamp1)
+                    return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+                // threshold included in exp
+                if (claimsFromChallengeToken.getExp() == null || claimsFromChallengeToken.getExp() != timestamp1 + thresholdMilis)
+                    return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+                // token spk -> ipk
+                if (!Objects.equals(claimsFromAuthorizationToken.getSpk(), claimsFromChallengeToken.getIpk()))
+                    return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+
+                // check challenge is ok SHA256(token+timestamp)
+                if (!challengeTimely)
+                    return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+                String challengeHash = challengeJws.getClaimAsString("hash");
+                if (!HashingHelper.matchesHex(
+                        HashingHelper.digest(HashingHelper.SHA_256, securityCredentialsSetElement.getToken(), timestamp1),
+                        challengeHash))
+                    return ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN);
+
+                // signature match - token IPK & sign
+                authorizationTokenValidationResult = authorizationTokenJws.getValidationResult();
+                if (!authorizationTokenValidationResult.isValid())
+                    return authorizationTokenValidationResult;
+                // signature match - token SPK -> challenge IPK & sign, the challenge is verified only with this key
+                PublicKey subjectPublicKey = authorizationTokenJws.findSubjectPublicKey();
+                if (subjectPublicKey == null)
+                    return ValidationResult.INVALID_PUBLIC_KEY;
+                challengeValidationResult = challengeJws.getValidationResult(subjectPublicKey);
+                if (!challengeValidationResult.isValid())
+                    return challengeValidationResult;
+
+                if (claimsFromAuthorizationToken.getExp() != null)
+                    expirationTime = Math.min(expirationTime, claimsFromAuthorizationToken.getExp());
             }
+        } catch (MalformedJWTException e) {
+            return ValidationResult.MALFORMED_TOKEN;
+        } catch (NoSuchAlgorithmException e) {
+            return ValidationResult.error(e.getMessage());
         }
 
-        return true;
+        if (verifiedRequestsCache != null)
+            verifiedRequestsCache.putVerified(securityRequest, expirationTime);
+        return ValidationResult.VALID;
     }
 
     /**
@@ -223,18 +273,21 @@ public class MutualAuthenticationHelper {
                                             long timestamp2) throws
             NoSuchAlgorithmException {
 
-        String hashedTimestamp2 = hashSHA256(Long.toString(timestamp2));
+        String hashedTimestamp2 = HashingHelper.toHex(HashingHelper.sha256(timestamp2));
 
-        JwtBuilder jwtBuilder = Jwts.builder();
-        jwtBuilder.claim("hash", hashedTimestamp2);
-        jwtBuilder.claim("timestamp", Long.toString(timestamp2));
-        jwtBuilder.signWith(SignatureAlgorithm.ES256, servicePrivateKey);
+        Map<String, Object> responseClaims = new LinkedHashMap<>();
+        responseClaims.put("hash", hashedTimestamp2);
+        responseClaims.put("timestamp", Long.toString(timestamp2));
 
-        return jwtBuilder.compact();
+        return ES256Engine.sign(responseClaims, servicePrivateKey);
     }
 
     /**
      * Used by the client to handle the service response encapsulated in a JWS.
+     * <p>
+     * The response is verified against the service's public key, parsed only once per {@link Certificate}, and its
+     * claims are decoded once after the signature matched. The time spent in each stage is recorded in
+     * {@link #getServiceResponseVerificationTimings()}.
      *
      * @param serviceResponse    that should prove the service's authenticity
      * @param serviceCertificate used verify the payload signature
@@ -245,36 +298,81 @@ public class MutualAuthenticationHelper {
             NoSuchAlgorithmException,
             CertificateException {
 
-        Long currentLocalTimestamp = new Date().getTime();
+        long currentLocalTimestamp = System.currentTimeMillis();
         // JWT rounds to seconds
         currentLocalTimestamp = currentLocalTimestamp - currentLocalTimestamp % 1000;
-        PublicKey servicePublicKey = serviceCertificate.getX509().getPublicKey();
 
-        Long remoteServiceTimestamp;
-        String remoteServiceTimestampHash;
+        ServiceResponseVerificationTimings timings = serviceResponseVerificationTimings;
+        long stageStart = System.nanoTime();
+        PublicKey servicePublicKey = serviceCertificate.getPublicKey();
+        long stageEnd = System.nanoTime();
+        timings.record(ServiceResponseVerificationTimings.Stage.PUBLIC_KEY, stageStart, stageEnd);
+
+        stageStart = stageEnd;
+        boolean signatureVerified;
         try {
-            remoteServiceTimestamp = Long.valueOf(Jwts.parser().setSigningKey(servicePublicKey).parseClaimsJws(serviceResponse).getBody().get("timestamp").toString());
-            remoteServiceTimestampHash = Jwts.parser().setSigningKey(servicePublicKey).parseClaimsJws(serviceResponse).getBody().get("hash").toString();
-        } catch (io.jsonwebtoken.SignatureException e) {
+            signatureVerified = ES256Engine.verify(serviceResponse, servicePublicKey);
+        } catch (InvalidKeyException e) {
+            throw new CertificateException(e.getMessage(), e);
+        }
+        stageEnd = System.nanoTime();
+        timings.record(ServiceResponseVerificationTimings.Stage.SIGNATURE, stageStart, stageEnd);
+        if (!signatureVerified) {
             log.error("The signature of the service response doesn't match the provided component certificate.");
-            throw new CertificateException(e.getMessage());
+            throw new CertificateException("Service response signature doesn't match the component certificate");
         }
 
-        String calculatedHash = hashSHA256(remoteServiceTimestamp.toString());
-        Long deltaT = Math.abs(currentLocalTimestamp - remoteServiceTimestamp);
-
-        if (!calculatedHash.equals(remoteServiceTimestampHash)) {
-            log.error("Service response JWS hash claim doesn't match symbIoTe mutual authentication algorithm");
+        stageStart = stageEnd;
+        Object remoteServiceTimestampClaim;
+        Object remoteServiceTimestampHashClaim;
+        try {
+            Map<String, Object> responseClaims = ES256Engine.decodeClaims(serviceResponse);
+            remoteServiceTimestampClaim = responseClaims.get("timestamp");
+            remoteServiceTimestampHashClaim = responseClaims.get("hash");
+        } catch (MalformedJWTException e) {
+            log.error("Service response JWS is malformed");
             return false;
         }
-
-        if (deltaT > SERVICE_RESPONSE_EXPIRATION_TIME * 1000) {
-            log.error("Disparity between received timestamp: " + new Date(remoteServiceTimestamp)
-                    + " and our local timestamp: " + new Date(currentLocalTimestamp)
-                    + " is " + deltaT / 1000 + "seconds, which is over the " + SERVICE_RESPONSE_EXPIRATION_TIME + " seconds allowed validity threshold.");
+        stageEnd = System.nanoTime();
+        timings.record(ServiceResponseVerificationTimings.Stage.CLAIMS, stageStart, stageEnd);
+        if (remoteServiceTimestampClaim == null || remoteServiceTimestampHashClaim == null) {
+            log.error("Service response JWS lacks the timestamp or hash claim");
             return false;
         }
-        return true;
+
+        stageStart = stageEnd;
+        try {
+            long remoteServiceTimestamp;
+            try {
+                remoteServiceTimestamp = Long.parseLong(remoteServiceTimestampClaim.toString());
+            } catch (NumberFormatException e) {
+                log.error("Service response JWS timestamp claim is not a number");
+                return false;
+            }
+            long deltaT = Math.abs(currentLocalTimestamp - remoteServiceTimestamp);
+
+            if (!HashingHelper.matchesHex(HashingHelper.sha256(remoteServiceTimestamp), remoteServiceTimestampHashClaim.toString())) {
+                log.error("Service response JWS hash claim doesn't match symbIoTe mutual authentication algorithm");
+                return false;
+            }
+
+            if (deltaT > SERVICE_RESPONSE_EXPIRATION_TIME * 1000) {
+                log.error("Disparity between received timestamp: " + new Date(remoteServiceTimestamp)
+                        + " and our local timestamp: " + new Date(currentLocalTimestamp)
+                        + " is " + deltaT / 1000 + "seconds, which is over the " + SERVICE_RESPONSE_EXPIRATION_TIME + " seconds allowed validity threshold.");
+                return false;
+            }
+            return true;
+        } finally {
+            timings.record(ServiceResponseVerificationTimings.Stage.HASH, stageStart, System.nanoTime());
+        }
+    }
+
+    /**
+     * @return time spent in each stage of {@link #isServiceResponseVerified(String, Certificate)}
+     */
+    public static ServiceResponseVerificationTimings getServiceResponseVerificationTimings() {
+        return serviceResponseVerificationTimings;
     }
 
 }
@@ -0,0 +1,171 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.commons.Certificate;
+import eu.h2020.symbiote.security.communication.payloads.AAM;
+import eu.h2020.symbiote.security.communication.payloads.AvailableAAMsCollection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Bounded cache of X.509 certificates parsed from their PEM representation, keyed by the SHA-256 digest of the PEM.
+ * <p>
+ * The same few AAM and component certificates arrive over and over in different payloads (available AAMs
+ * collections, security credentials, keystores), so equal certificates share a single parsed instance and its
+ * public key instead of each {@link Certificate} parsing its own copy. The cache can be warmed with all the
+ * certificates of the available AAMs as soon as they are fetched, see {@link #preload(Map, boolean)}.
+ */
+public class ParsedCertificatesCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private static final Log log = LogFactory.getLog(ParsedCertificatesCache.class);
+    private static final ConcurrentMap<ByteBuffer, ParsedCertificate> parsedCertificates = new ConcurrentHashMap<>();
+    private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private ParsedCertificatesCache() {
+    }
+
+    /**
+     * @param pemCertificate X.509 certificate in PEM format
+     * @return the parsed certificate, shared by all the equal PEMs
+     * @throws CertificateException if the PEM is not a valid certificate
+     */
+    public static ParsedCertificate parse(String pemCertificate) throws CertificateException {
+        ByteBuffer digest = digest(pemCertificate);
+        ParsedCertificate parsedCertificate = parsedCertificates.get(digest);
+        if (parsedCertificate != null)
+            return parsedCertificate;
+
+        X509Certificate x509Certificate = (X509Certificate) ECDSAHelper.getCertificateFactory().generateCertificate(
+                new ByteArrayInputStream(pemCertificate.getBytes(StandardCharsets.UTF_8)));
+        parsedCertificate = new ParsedCertificate(x509Certificate);
+
+        // making room for the new certificate, which one goes doesn't matter much as the set of certificates is small and stable
+        if (parsedCertificates.size() >= maximumSize) {
+            Iterator<ByteBuffer> iterator = parsedCertificates.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        ParsedCertificate cachedCertificate = parsedCertificates.putIfAbsent(digest, parsedCertificate);
+        return cachedCertificate != null ? cachedCertificate : parsedCertificate;
+    }
+
+    /**
+     * Parses all the AAMs' CA and component certificates in one pass
+     *
+     * @param availableAAMs fetched from an AAM
+     * @param parallel      true to parse the certificates concurrently
+     * @return number of distinct certificates parsed
+     */
+    public static int preload(AvailableAAMsCollection availableAAMs, boolean parallel) {
+        return preload(availableAAMs.getAvailableAAMs(), parallel);
+    }
+
+    /**
+     * Parses all the AAMs' CA and component certificates in one pass, so that the first validations using them find
+     * the certificates and public keys ready. Each distinct PEM is parsed once and its parsed instance is shared by
+     * all the {@link Certificate}s holding it. Malformed certificates are skipped and left to fail on their first use.
+     *
+     * @param availableAAMs instance identifiers to AAMs
+     * @param parallel      true to parse the certificates concurrently
+     * @return number of distinct certificates parsed
+     */
+    public static int preload(Map<String, AAM> availableAAMs, boolean parallel) {
+        Map<String, List<Certificate>> certificatesByPEM = new HashMap<>();
+        for (AAM aam : availableAAMs.values()) {
+            addCertificate(certificatesByPEM, aam.getAamCACertificate());
+            if (aam.getComponentCertificates() != null)
+                aam.getComponentCertificates().values().forEach(certificate -> addCertificate(certificatesByPEM, certificate));
+        }
+        Stream<List<Certificate>> certificates = parallel
+                ? certificatesByPEM.values().parallelStream()
+                : certificatesByPEM.values().stream();
+        return (int) certificates.filter(ParsedCertificatesCache::preload).count();
+    }
+
+    /**
+     * @param size maximum number of cached certificates
+     */
+    public static void setMaximumSize(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        maximumSize = size;
+    }
+
+    /**
+     * @return number of cached certificates
+     */
+    public static int size() {
+        return parsedCertificates.size();
+    }
+
+    /**
+     * drops all the cached certificates
+     */
+    public static void clear() {
+        parsedCertificates.clear();
+    }
+
+    private static void addCertificate(Map<String, List<Certificate>> certificatesByPEM, Certificate certificate) {
+        if (certificate == null || certificate.getCertificateString().isEmpty())
+            return;
+        certificatesByPEM.computeIfAbsent(certificate.getCertificateString(), pem -> new ArrayList<>()).add(certificate);
+    }
+
+    private static boolean preload(List<Certificate> equalCertificates) {
+        try {
+            // the first one parses, the others only pick the shared instance
+            for (Certificate certificate : equalCertificates)
+                certificate.getPublicKey();
+            return true;
+        } catch (CertificateException e) {
+            log.debug("Not preloading a malformed certificate: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static ByteBuffer digest(String pemCertificate) {
+        try {
+            return ByteBuffer.wrap(HashingHelper.digest(HashingHelper.SHA_256, pemCertificate));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory for every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * X.509 certificate together with its public key, both shared by all the users of the certificate and so not to
+     * be modified
+     */
+    public static final class ParsedCertificate {
+        private final X509Certificate x509Certificate;
+        private final PublicKey publicKey;
+
+        private ParsedCertificate(X509Certificate x509Certificate) {
+            this.x509Certificate = x509Certificate;
+            this.publicKey = x509Certificate.getPublicKey();
+        }
+
+        public X509Certificate getX509Certificate() {
+            return x509Certificate;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+    }
+}
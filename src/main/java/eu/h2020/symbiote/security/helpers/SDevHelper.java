@@ -1,9 +1,5 @@
 package eu.h2020.symbiote.security.helpers;
 
-import org.bouncycastle.util.encoders.Hex;
-
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
@@ -24,11 +20,6 @@ public class SDevHelper {
     public static String hashSHA1(String stringToHash) throws
             NoSuchAlgorithmException {
 
-        MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
-        byte[] byteHash = messageDigest.digest(stringToHash.getBytes(StandardCharsets.UTF_8));
-        String hexHash = new String(Hex.encode(byteHash)); // byte to hex converter to get the hashed value in hexadecimal
-        messageDigest.reset();
-
-        return hexHash;
+        return HashingHelper.toHex(HashingHelper.digest(HashingHelper.SHA_1, stringToHash));
     }
 }
@@ -127,7 +127,7 @@ public class ServiceAAMCertificateKeyStoreFactory {
         ECDSAHelper.enableECDSAProvider();
         KeyStore ks = getKeystore(keyStoreFileName, keyStorePassword, log);
         log.info("Key Store generated.");
-        KeyPair pair = CryptoHelper.createKeyPair();
+        KeyPair pair = KeyPairPool.take();
         log.info("Key pair for the service's AAM generated.");
         String csr = CryptoHelper.buildServiceCertificateSigningRequestPEM(serviceId, pair);
         log.info("CSR for the service's AAM generated.");
@@ -0,0 +1,100 @@
+package eu.h2020.symbiote.security.helpers;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in each stage of {@link MutualAuthenticationHelper#isServiceResponseVerified(String, eu.h2020.symbiote.security.commons.Certificate)},
+ * accumulated over all the verifications since the last {@link #reset()}.
+ */
+public class ServiceResponseVerificationTimings {
+
+    public enum Stage {
+        /**
+         * getting the service's public key from its certificate
+         */
+        PUBLIC_KEY,
+        /**
+         * ES256 signature verification
+         */
+        SIGNATURE,
+        /**
+         * decoding the response's claims
+         */
+        CLAIMS,
+        /**
+         * checking the timestamp hash and the response age
+         */
+        HASH
+    }
+
+    private final Map<Stage, LongAdder> totalNanos;
+    private final Map<Stage, LongAdder> counts;
+
+    ServiceResponseVerificationTimings() {
+        Map<Stage, LongAdder> nanos = new EnumMap<>(Stage.class);
+        Map<Stage, LongAdder> stageCounts = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            nanos.put(stage, new LongAdder());
+            stageCounts.put(stage, new LongAdder());
+        }
+        totalNanos = Collections.unmodifiableMap(nanos);
+        counts = Collections.unmodifiableMap(stageCounts);
+    }
+
+    void record(Stage stage, long startNanos, long endNanos) {
+        totalNanos.get(stage).add(endNanos - startNanos);
+        counts.get(stage).increment();
+    }
+
+    /**
+     * @param stage of the verification
+     * @param unit  of the returned time
+     * @return total time spent in the stage
+     */
+    public long getTotalTime(Stage stage, TimeUnit unit) {
+        return unit.convert(totalNanos.get(stage).sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param stage of the verification
+     * @return how many times the stage was run, verifications failing at an earlier stage don't reach the later ones
+     */
+    public long getCount(Stage stage) {
+        return counts.get(stage).sum();
+    }
+
+    /**
+     * @param stage of the verification
+     * @return mean time in nanoseconds spent in the stage or 0 if it wasn't run yet
+     */
+    public double getMeanNanos(Stage stage) {
+        long count = getCount(stage);
+        return count == 0 ? 0 : (double) totalNanos.get(stage).sum() / count;
+    }
+
+    /**
+     * zeroes all the timings
+     */
+    public void reset() {
+        for (Stage stage : Stage.values()) {
+            totalNanos.get(stage).reset();
+            counts.get(stage).reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ServiceResponseVerificationTimings{");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0)
+                builder.append(", ");
+            builder.append(stage).append('=').append(getCount(stage)).append('x')
+                    .append(String.format("%.1f", getMeanNanos(stage) / 1000)).append("us");
+        }
+        return builder.append('}').toString();
+    }
+}
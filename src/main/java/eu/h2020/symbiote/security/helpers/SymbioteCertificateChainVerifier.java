@@ -0,0 +1,101 @@
+package eu.h2020.symbiote.security.helpers;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Verifies the fixed-shape symbIoTe certificate chains directly, without the general PKIX path building: client →
+ * platform AAM → core AAM, or client → core AAM when the client (e.g. a core component) is signed by the core AAM.
+ * <p>
+ * It checks the issuer/subject linkage, the validity periods, the intermediate's basic constraints and key usage
+ * and the signatures, using the public keys shared through the {@link ParsedCertificatesCache}. As with PKIX, the
+ * core AAM certificate is a trust anchor, so only its key and subject are used. Chains that don't have the simple
+ * symbIoTe shape (unexpected critical extensions, ambiguous names, non v3 intermediates) are left to the PKIX
+ * verification, which stays the reference implementation.
+ */
+final class SymbioteCertificateChainVerifier {
+
+    private static final String BASIC_CONSTRAINTS_OID = "2.5.29.19";
+    private static final String KEY_USAGE_OID = "2.5.29.15";
+    private static final Set<String> HANDLED_CRITICAL_EXTENSIONS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(BASIC_CONSTRAINTS_OID, KEY_USAGE_OID)));
+    // keyCertSign bit in the KeyUsage extension
+    private static final int KEY_CERT_SIGN = 5;
+
+    private SymbioteCertificateChainVerifier() {
+    }
+
+    /**
+     * @param coreAAMCertificate    trust anchor
+     * @param signingAAMCertificate issuer of the client certificate, ignored if the chain is signed by the core AAM
+     * @param clientCertificate     to be verified
+     * @param signedByCoreAAM       true if the client certificate should be issued directly by the core AAM
+     * @return true if the chain is trusted, false if it isn't or null if the chain has to be verified using PKIX
+     */
+    static Boolean isTrusted(ParsedCertificatesCache.ParsedCertificate coreAAMCertificate,
+                             ParsedCertificatesCache.ParsedCertificate signingAAMCertificate,
+                             ParsedCertificatesCache.ParsedCertificate clientCertificate,
+                             boolean signedByCoreAAM) {
+        X509Certificate anchor = coreAAMCertificate.getX509Certificate();
+        X509Certificate client = clientCertificate.getX509Certificate();
+        if (hasUnhandledCriticalExtensions(client))
+            return null;
+
+        if (signedByCoreAAM) {
+            return isIssuedBy(client, anchor, coreAAMCertificate.getPublicKey())
+                    && isValid(client);
+        }
+
+        X509Certificate intermediate = signingAAMCertificate.getX509Certificate();
+        if (hasUnhandledCriticalExtensions(intermediate)
+                || intermediate.getVersion() != 3
+                // PKIX could find other paths between equally named certificates
+                || intermediate.getSubjectX500Principal().equals(anchor.getSubjectX500Principal())
+                || client.getSubjectX500Principal().equals(intermediate.getSubjectX500Principal()))
+            return null;
+
+        return isIssuedBy(client, intermediate, signingAAMCertificate.getPublicKey())
+                && isIssuedBy(intermediate, anchor, coreAAMCertificate.getPublicKey())
+                && isCertificateAuthority(intermediate)
+                && isValid(intermediate)
+                && isValid(client);
+    }
+
+    private static boolean hasUnhandledCriticalExtensions(X509Certificate certificate) {
+        Set<String> criticalExtensions = certificate.getCriticalExtensionOIDs();
+        return criticalExtensions != null && !HANDLED_CRITICAL_EXTENSIONS.containsAll(criticalExtensions);
+    }
+
+    private static boolean isIssuedBy(X509Certificate certificate, X509Certificate issuer, PublicKey issuerPublicKey) {
+        if (!certificate.getIssuerX500Principal().equals(issuer.getSubjectX500Principal()))
+            return false;
+        try {
+            certificate.verify(issuerPublicKey, ECDSAHelper.getProvider());
+            return true;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean isCertificateAuthority(X509Certificate certificate) {
+        // no further intermediates below it, so any path length constraint is satisfied
+        if (certificate.getBasicConstraints() < 0)
+            return false;
+        boolean[] keyUsage = certificate.getKeyUsage();
+        return keyUsage == null || (keyUsage.length > KEY_CERT_SIGN && keyUsage[KEY_CERT_SIGN]);
+    }
+
+    private static boolean isValid(X509Certificate certificate) {
+        try {
+            certificate.checkValidity();
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
+import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded memo of security requests that passed the mutual authentication check, keyed by the SHA-256 digest of
+ * their timestamp and their credentials' tokens and challenges.
+ * <p>
+ * Entries live until the challenges expire (or any of the tokens does, if sooner) and are grouped in buckets by
+ * their expiration second, so that expired entries are dropped a whole bucket at a time and, once the memo is full,
+ * the entries closest to their expiration are evicted first. Only successful verifications are ever stored, see
+ * {@link MutualAuthenticationHelper#enableVerifiedSecurityRequestsCache(int)}.
+ */
+public class VerifiedSecurityRequestsCache {
+
+    private static final long BUCKET_WIDTH_MILLIS = 1000;
+
+    private final int maximumSize;
+    private final Clock clock;
+    private final ConcurrentMap<ByteBuffer, Long> expirationTimes = new ConcurrentHashMap<>();
+    // expiration second -> requests expiring within it
+    private final ConcurrentSkipListMap<Long, Queue<ByteBuffer>> buckets = new ConcurrentSkipListMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maximumSize of the memo, must be positive
+     */
+    public VerifiedSecurityRequestsCache(int maximumSize) {
+        this(maximumSize, Clock.systemUTC());
+    }
+
+    /**
+     * @param maximumSize of the memo, must be positive
+     * @param clock       the expiration times are checked against
+     */
+    public VerifiedSecurityRequestsCache(int maximumSize, Clock clock) {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("Cache size must be positive");
+        this.maximumSize = maximumSize;
+        this.clock = clock;
+    }
+
+    /**
+     * @param securityRequest received by the service
+     * @return true if an identical security request was already successfully verified and is not yet expired
+     */
+    public boolean isVerified(SecurityRequest securityRequest) {
+        long now = clock.millis();
+        dropExpiredBuckets(now);
+        ByteBuffer digest = digest(securityRequest);
+        Long expirationTime = expirationTimes.get(digest);
+        if (expirationTime == null || expirationTime <= now) {
+            // not waiting for its bucket to be dropped
+            if (expirationTime != null)
+                expirationTimes.remove(digest, expirationTime);
+            missCount.increment();
+            return false;
+        }
+        hitCount.increment();
+        return true;
+    }
+
+    /**
+     * Stores a successful verification outcome
+     *
+     * @param securityRequest that was verified
+     * @param expirationTime  in milliseconds, until which the request would pass the verification again
+     */
+    public void putVerified(SecurityRequest securityRequest, long expirationTime) {
+        long now = clock.millis();
+        if (expirationTime <= now)
+            return;
+        dropExpiredBuckets(now);
+        while (expirationTimes.size() >= maximumSize && evictEarliestBucket()) {
+            // making room
+        }
+        ByteBuffer digest = digest(securityRequest);
+        // stored before being bucketed, so that a concurrent drop of the bucket can't miss the entry
+        expirationTimes.put(digest, expirationTime);
+        long bucketKey = expirationTime / BUCKET_WIDTH_MILLIS;
+        Queue<ByteBuffer> bucket = buckets.computeIfAbsent(bucketKey, key -> new ConcurrentLinkedQueue<>());
+        bucket.add(digest);
+        // the bucket got dropped (or evicted) concurrently, possibly without seeing the entry, which then goes too
+        if (buckets.get(bucketKey) != bucket)
+            expirationTimes.remove(digest, expirationTime);
+    }
+
+    /**
+     * drops all the stored entries
+     */
+    public void clear() {
+        buckets.clear();
+        expirationTimes.clear();
+    }
+
+    /**
+     * @return number of stored entries (including expired ones not yet removed)
+     */
+    public int size() {
+        return expirationTimes.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of entries dropped before their expiration to keep the memo within its maximum size
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private void dropExpiredBuckets(long now) {
+        // all the entries of buckets before the current one are expired
+        long currentBucket = now / BUCKET_WIDTH_MILLIS;
+        Map.Entry<Long, Queue<ByteBuffer>> bucket;
+        while ((bucket = buckets.firstEntry()) != null && bucket.getKey() < currentBucket) {
+            if (buckets.remove(bucket.getKey(), bucket.getValue()))
+                removeAll(bucket.getKey(), bucket.getValue());
+        }
+    }
+
+    private boolean evictEarliestBucket() {
+        Map.Entry<Long, Queue<ByteBuffer>> bucket = buckets.pollFirstEntry();
+        if (bucket == null)
+            return false;
+        evictionCount.add(removeAll(bucket.getKey(), bucket.getValue()));
+        return true;
+    }
+
+    private int removeAll(long bucketKey, Queue<ByteBuffer> digests) {
+        int removed = 0;
+        for (ByteBuffer digest : digests) {
+            // the same request might have been stored again with a later expiration
+            Long expirationTime = expirationTimes.get(digest);
+            if (expirationTime != null
+                    && expirationTime / BUCKET_WIDTH_MILLIS <= bucketKey
+                    && expirationTimes.remove(digest, expirationTime))
+                removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * The digest doesn't depend on the iteration order of the credentials, each credentials' token and challenge
+     * are digested separately, sorted and digested together with the timestamp.
+     */
+    private static ByteBuffer digest(SecurityRequest securityRequest) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = ECDSAHelper.getMessageDigest("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory for every Java platform
+            throw new IllegalStateException(e);
+        }
+        byte[][] credentialsDigests = new byte[securityRequest.getSecurityCredentials().size()][];
+        int i = 0;
+        for (SecurityCredentials securityCredentials : securityRequest.getSecurityCredentials()) {
+            byte[] token = securityCredentials.getToken().getBytes(StandardCharsets.UTF_8);
+            // the token length keeps the token/challenge boundary unambiguous
+            messageDigest.update(ByteBuffer.allocate(Integer.BYTES).putInt(token.length).array());
+            messageDigest.update(token);
+            messageDigest.update(securityCredentials.getAuthenticationChallenge().getBytes(StandardCharsets.UTF_8));
+            credentialsDigests[i++] = messageDigest.digest();
+        }
+        Arrays.sort(credentialsDigests, VerifiedSecurityRequestsCache::compare);
+
+        messageDigest.update(ByteBuffer.allocate(Long.BYTES).putLong(securityRequest.getTimestamp()).array());
+        for (byte[] credentialsDigest : credentialsDigests) {
+            messageDigest.update(credentialsDigest);
+        }
+        return ByteBuffer.wrap(messageDigest.digest());
+    }
+
+    private static int compare(byte[] first, byte[] second) {
+        for (int i = 0; i < first.length; i++) {
+            int difference = (first[i] & 0xff) - (second[i] & 0xff);
+            if (difference != 0)
+                return difference;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,136 @@
+package eu.h2020.symbiote.security.commons;
+
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import io.jsonwebtoken.Claims;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CompactTokenTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+    }
+
+    @Test
+    public void compactTokenMatchesToken() throws Exception {
+        Token token = new Token(buildToken("testClient"));
+        CompactToken compactToken = CompactToken.of(token);
+        Claims claims = ParsedJws.parse(token.getToken()).getClaims();
+
+        assertEquals(token.getToken(), compactToken.getToken());
+        assertEquals(token.getId(), compactToken.getId());
+        assertEquals(Token.Type.HOME, compactToken.getType());
+        assertEquals(claims.getIssuer(), compactToken.getIssuer());
+        assertEquals(claims.getSubject(), compactToken.getSubject());
+        assertEquals(claims.getIssuedAt().getTime(), compactToken.getIssuedAt());
+        assertEquals(claims.getExpiration().getTime(), compactToken.getExpiration());
+        assertFalse(compactToken.isExpired(System.currentTimeMillis()));
+        assertTrue(compactToken.isExpired(compactToken.getExpiration() + 1));
+        assertEquals("John", compactToken.getAttribute("name"));
+        assertEquals("20", compactToken.getAttribute("age"));
+        assertNull(compactToken.getAttribute("missing"));
+        assertArrayEquals(new String[]{"age", "name", "role"}, compactToken.getAttributes().keySet().toArray());
+
+        // the rebuilt claims carry the same values
+        Claims compactClaims = compactToken.getClaims();
+        assertEquals(claims.size(), compactClaims.size());
+        for (Map.Entry<String, Object> claim : claims.entrySet())
+            assertEquals(claim.getKey(), claim.getValue().toString(), compactClaims.get(claim.getKey()).toString());
+        assertEquals(claims.getExpiration(), compactClaims.getExpiration());
+        assertEquals(claims.getIssuedAt(), compactClaims.get(Claims.ISSUED_AT, Date.class));
+        assertEquals("John", compactClaims.get(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX + "name", String.class));
+        assertEquals(claims.get("spk"), compactClaims.get("spk"));
+        assertNull(compactClaims.get("missing"));
+
+        Token rebuiltToken = compactToken.toToken();
+        assertEquals(token.getToken(), rebuiltToken.getToken());
+        assertEquals(token.getId(), rebuiltToken.getId());
+        assertEquals(token.getType(), rebuiltToken.getType());
+        assertEquals(compactToken, CompactToken.of(ParsedJws.parse(token.getToken())));
+    }
+
+    @Test
+    public void forgedTokenRejected() throws Exception {
+        String forgedToken = DummyTokenIssuer.buildAuthorizationToken("testClient",
+                new HashMap<>(),
+                issuingAAMPublicKey.getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "testIssuer",
+                issuingAAMPublicKey,
+                CryptoHelper.createKeyPair().getPrivate(),
+                DummyTokenIssuer.SignatureType.PROPER);
+        try {
+            CompactToken.of(ParsedJws.parse(forgedToken));
+            fail("forged token accepted");
+        } catch (ValidationException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void claimsReadOnly() throws Exception {
+        CompactToken.of(ParsedJws.parse(buildToken("testClient"))).toToken().getClaims().setSubject("otherClient");
+    }
+
+    @Test
+    public void tokenFromStringKeepsFullClaims() throws Exception {
+        Token token = new Token(buildToken("testClient"));
+        // still the mutable jjwt claims
+        token.getClaims().setAudience("audience");
+        assertEquals("audience", token.getClaims().getAudience());
+    }
+
+    @Test
+    public void sharedClaimsInterned() throws Exception {
+        CompactToken first = CompactToken.of(ParsedJws.parse(buildToken(new String("testClient"))));
+        CompactToken second = CompactToken.of(ParsedJws.parse(buildToken(new String("testClient"))));
+
+        assertNotEquals(first, second);
+        assertSame(first.getIssuer(), second.getIssuer());
+        assertSame(first.getSubject(), second.getSubject());
+        assertSame(first.getIssuerPublicKey(), second.getIssuerPublicKey());
+    }
+
+    private String buildToken(String userId) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("role", "admin");
+        attributes.put("name", "John");
+        attributes.put("age", "20");
+        return DummyTokenIssuer.buildAuthorizationToken(userId,
+                attributes,
+                issuingAAMPublicKey.getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "testIssuer",
+                issuingAAMPublicKey,
+                issuingAAMPrivateKey,
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+}
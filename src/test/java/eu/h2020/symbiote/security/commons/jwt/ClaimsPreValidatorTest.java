@@ -0,0 +1,112 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ClaimsPreValidatorTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+    private static final String ISSUER = "testIssuer";
+
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+        JWTEngine.resetEarlyRejectionsCounts();
+    }
+
+    @After
+    public void tearDown() {
+        JWTEngine.setTrustedIssuers(null);
+        JWTEngine.resetEarlyRejectionsCounts();
+    }
+
+    @Test
+    public void expiredTokenRejectedBeforeSignatureCheck() throws Exception {
+        // forged signature would be reported as invalid trust chain if it was checked
+        String expiredForgedToken = buildToken(-1000L, CryptoHelper.createKeyPair().getPrivate(), DummyTokenIssuer.SignatureType.PROPER);
+
+        assertEquals(ValidationStatus.EXPIRED_TOKEN, JWTEngine.validateTokenString(expiredForgedToken));
+        assertEquals(ValidationStatus.EXPIRED_TOKEN, JWTEngine.validateTokenString(expiredForgedToken, issuingAAMPublicKey));
+        assertEquals(2, JWTEngine.getEarlyRejectionsCount(ValidationStatus.EXPIRED_TOKEN));
+    }
+
+    @Test
+    public void untrustedIssuerRejected() throws Exception {
+        String token = buildToken(3600000L, issuingAAMPrivateKey, DummyTokenIssuer.SignatureType.PROPER);
+
+        JWTEngine.setTrustedIssuers(Collections.singleton("otherIssuer"));
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, JWTEngine.validateTokenString(token));
+        assertEquals(1, JWTEngine.getEarlyRejectionsCount(ValidationStatus.INVALID_TRUST_CHAIN));
+
+        JWTEngine.setTrustedIssuers(Collections.singleton(ISSUER));
+        assertEquals(ValidationStatus.VALID, JWTEngine.validateTokenString(token));
+        assertEquals(1, JWTEngine.getEarlyRejectionsCount(ValidationStatus.INVALID_TRUST_CHAIN));
+    }
+
+    @Test
+    public void wrongAlgorithmAndTokenTypeRejected() {
+        assertValidationException(buildToken(3600000L, issuingAAMPrivateKey, DummyTokenIssuer.SignatureType.ABUSING));
+
+        String unknownTypeToken = Jwts.builder()
+                .setIssuer(ISSUER)
+                .claim("ipk", Base64.getEncoder().encodeToString(issuingAAMPublicKey.getEncoded()))
+                .claim("ttyp", "UNKNOWN_TYPE")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 3600000L))
+                .signWith(SignatureAlgorithm.ES256, issuingAAMPrivateKey)
+                .compact();
+        assertValidationException(unknownTypeToken);
+
+        assertEquals(2, JWTEngine.getEarlyRejectionsCount(ValidationStatus.UNKNOWN));
+    }
+
+    private static void assertValidationException(String token) {
+        try {
+            JWTEngine.validateTokenString(token);
+            fail("Expected ValidationException");
+        } catch (ValidationException e) {
+            // expected
+        }
+    }
+
+    private String buildToken(long validity, PrivateKey signingKey, DummyTokenIssuer.SignatureType signatureType) {
+        return DummyTokenIssuer.buildAuthorizationToken("testClient",
+                null,
+                issuingAAMPublicKey.getEncoded(),
+                Token.Type.HOME,
+                validity,
+                ISSUER,
+                issuingAAMPublicKey,
+                signingKey,
+                signatureType);
+    }
+}
@@ -0,0 +1,170 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.JwtException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parity of the {@link ES256Engine} with the jjwt reference implementation
+ */
+public class ES256EngineTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+    private static final String CAPTURED_TOKENS_LOCATION = "./src/test/resources/captured_tokens.txt";
+    private static final int TOKENS_COUNT = 200;
+
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+    }
+
+    @Test
+    public void signedTokensAcceptedByReference() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < TOKENS_COUNT; i++) {
+            Map<String, Object> claims = new LinkedHashMap<>();
+            claims.put("jti", String.valueOf(i));
+            claims.put("sub", "subject" + i);
+            claims.put("hash", "ąę" + i);
+            claims.put("iat", now);
+            claims.put("exp", now + 60);
+            String jws = ES256Engine.sign(claims, issuingAAMPrivateKey);
+
+            Claims referenceClaims = Jwts.parser().setSigningKey(issuingAAMPublicKey).parseClaimsJws(jws).getBody();
+            assertEquals(String.valueOf(i), referenceClaims.getId());
+            assertEquals("subject" + i, referenceClaims.getSubject());
+            assertEquals("ąę" + i, referenceClaims.get("hash"));
+            assertEquals(now * 1000, referenceClaims.getExpiration().getTime() - 60000);
+            assertTrue(ES256Engine.verify(jws, issuingAAMPublicKey));
+        }
+    }
+
+    @Test
+    public void referenceTokensVerified() throws Exception {
+        PublicKey otherPublicKey = CryptoHelper.createKeyPair().getPublic();
+        for (int i = 0; i < TOKENS_COUNT; i++) {
+            String jws = DummyTokenIssuer.buildAuthorizationToken("client" + i,
+                    null,
+                    issuingAAMPublicKey.getEncoded(),
+                    Token.Type.HOME,
+                    3600000L,
+                    "testIssuer",
+                    issuingAAMPublicKey,
+                    issuingAAMPrivateKey,
+                    DummyTokenIssuer.SignatureType.PROPER);
+
+            assertTrue(ES256Engine.verify(jws, issuingAAMPublicKey));
+            assertFalse(ES256Engine.verify(jws, otherPublicKey));
+            assertSameOutcome(tamperPayload(jws));
+            assertSameOutcome(tamperSignature(jws));
+        }
+        assertFalse(ES256Engine.verify("a.b", issuingAAMPublicKey));
+        assertFalse(ES256Engine.verify("a.b.c", issuingAAMPublicKey));
+    }
+
+    @Test
+    public void capturedTokensVerified() throws Exception {
+        List<String> capturedTokens = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(CAPTURED_TOKENS_LOCATION), StandardCharsets.US_ASCII)) {
+            if (!line.isEmpty() && !line.startsWith("#"))
+                capturedTokens.add(line);
+        }
+        assertFalse(capturedTokens.isEmpty());
+        PublicKey otherPublicKey = CryptoHelper.createKeyPair().getPublic();
+        for (String jws : capturedTokens) {
+            PublicKey issuerPublicKey = PublicKeysCache.getPublicKey((String) ES256Engine.decodeClaims(jws).get("ipk"));
+            assertTrue(assertSameOutcome(jws, issuerPublicKey));
+            assertFalse(assertSameOutcome(jws, otherPublicKey));
+            assertFalse(assertSameOutcome(tamperPayload(jws), issuerPublicKey));
+            assertFalse(assertSameOutcome(tamperSignature(jws), issuerPublicKey));
+        }
+    }
+
+    @Test
+    public void signatureFormatConversion() throws Exception {
+        Signature signature = Signature.getInstance("SHA256withECDSA", ECDSAHelper.getProvider());
+        byte[] raw = new byte[64];
+        byte[] der = new byte[72];
+        for (int i = 0; i < TOKENS_COUNT; i++) {
+            signature.initSign(issuingAAMPrivateKey);
+            signature.update(new byte[]{(byte) i});
+            byte[] referenceDer = signature.sign();
+
+            ES256Engine.derToRaw(referenceDer, raw);
+            int length = ES256Engine.rawToDer(raw, der);
+            assertArrayEquals(referenceDer, Arrays.copyOf(der, length));
+        }
+
+        // leading zeros and high bits
+        Arrays.fill(raw, (byte) 0);
+        raw[2] = 1;
+        raw[32] = (byte) 0x80;
+        int length = ES256Engine.rawToDer(raw, der);
+        assertArrayEquals(new byte[]{0x30, 67, 0x02, 30, 1}, Arrays.copyOf(der, 5));
+        assertEquals(69, length);
+        assertArrayEquals(new byte[]{0x02, 33, 0, (byte) 0x80}, Arrays.copyOfRange(der, 34, 38));
+        byte[] roundTrip = new byte[64];
+        ES256Engine.derToRaw(Arrays.copyOf(der, length), roundTrip);
+        assertArrayEquals(raw, roundTrip);
+    }
+
+    private void assertSameOutcome(String jws) throws Exception {
+        assertSameOutcome(jws, issuingAAMPublicKey);
+    }
+
+    /**
+     * @return the outcome of the reference verification
+     */
+    private static boolean assertSameOutcome(String jws, PublicKey publicKey) throws Exception {
+        boolean referenceVerified;
+        try {
+            Jwts.parser().setSigningKey(publicKey).parseClaimsJws(jws);
+            referenceVerified = true;
+        } catch (ExpiredJwtException e) {
+            // the signature is checked before the expiration
+            referenceVerified = true;
+        } catch (JwtException | IllegalArgumentException e) {
+            referenceVerified = false;
+        }
+        assertEquals(referenceVerified, ES256Engine.verify(jws, publicKey));
+        return referenceVerified;
+    }
+
+    private static String tamperPayload(String jws) {
+        int index = jws.indexOf('.') + 5;
+        return jws.substring(0, index) + (jws.charAt(index) == 'A' ? 'B' : 'A') + jws.substring(index + 1);
+    }
+
+    private static String tamperSignature(String jws) {
+        int index = jws.lastIndexOf('.') + 3;
+        return jws.substring(0, index) + (jws.charAt(index) == 'A' ? 'B' : 'A') + jws.substring(index + 1);
+    }
+}
@@ -0,0 +1,149 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.Certificate;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.communication.payloads.AAM;
+import eu.h2020.symbiote.security.communication.payloads.AvailableAAMsCollection;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyCertificateIssuer;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.*;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IssuerKeysRegistryTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+
+    private X509Certificate issuingAAMCertificate;
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMCertificate = (X509Certificate) ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS);
+        issuingAAMPublicKey = issuingAAMCertificate.getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+    }
+
+    @After
+    public void tearDown() {
+        IssuerKeysRegistry.setMaximumSize(IssuerKeysRegistry.DEFAULT_MAXIMUM_SIZE);
+        IssuerKeysRegistry.clear();
+    }
+
+    @Test
+    public void registryFilledFromAvailableAAMs() throws Exception {
+        Map<String, AAM> availableAAMs = new HashMap<>();
+        availableAAMs.put(SecurityConstants.CORE_AAM_INSTANCE_ID, new AAM("", "", SecurityConstants.CORE_AAM_INSTANCE_ID, "",
+                new Certificate(CryptoHelper.convertX509ToPEM(issuingAAMCertificate)), new HashMap<>()));
+        availableAAMs.put("noCertificate", new AAM("", "", "noCertificate", "", new Certificate(), new HashMap<>()));
+
+        assertEquals(1, IssuerKeysRegistry.registerAll(new AvailableAAMsCollection(availableAAMs)));
+        assertEquals(1, IssuerKeysRegistry.size());
+        assertNotNull(IssuerKeysRegistry.getVerifier(issuingAAMPublicKey));
+
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(1024);
+        assertFalse(IssuerKeysRegistry.register(rsaGenerator.generateKeyPair().getPublic()));
+        assertTrue(IssuerKeysRegistry.unregister(issuingAAMPublicKey));
+        assertNull(IssuerKeysRegistry.getVerifier(issuingAAMPublicKey));
+    }
+
+    @Test
+    public void updateKeepsOtherKeysWhileThereIsRoom() throws Exception {
+        PublicKey registeredKey = CryptoHelper.createKeyPair().getPublic();
+        assertTrue(IssuerKeysRegistry.register(registeredKey));
+
+        assertEquals(1, IssuerKeysRegistry.update(new AvailableAAMsCollection(buildAvailableAAMs())));
+        assertEquals(2, IssuerKeysRegistry.size());
+        assertNotNull(IssuerKeysRegistry.getVerifier(issuingAAMPublicKey));
+        assertNotNull(IssuerKeysRegistry.getVerifier(registeredKey));
+    }
+
+    @Test
+    public void updateMakesRoomWithKeysOfNoLongerAvailableAAMs() throws Exception {
+        IssuerKeysRegistry.setMaximumSize(2);
+        PublicKey rotatedKey = CryptoHelper.createKeyPair().getPublic();
+        assertTrue(IssuerKeysRegistry.register(rotatedKey));
+        assertTrue(IssuerKeysRegistry.register(issuingAAMPublicKey));
+
+        // the available key isn't the one to go
+        Map<String, AAM> availableAAMs = buildAvailableAAMs();
+        KeyPair platformAAMKeyPair = CryptoHelper.createKeyPair();
+        availableAAMs.put("platform", new AAM("", "", "platform", "",
+                new Certificate(CryptoHelper.convertX509ToPEM(DummyCertificateIssuer.buildPlatformAAMCertificate("platform",
+                        platformAAMKeyPair, issuingAAMCertificate, issuingAAMPrivateKey))), new HashMap<>()));
+        assertEquals(2, IssuerKeysRegistry.update(availableAAMs));
+        assertEquals(2, IssuerKeysRegistry.size());
+        assertNotNull(IssuerKeysRegistry.getVerifier(issuingAAMPublicKey));
+        assertNotNull(IssuerKeysRegistry.getVerifier(platformAAMKeyPair.getPublic()));
+        assertNull(IssuerKeysRegistry.getVerifier(rotatedKey));
+    }
+
+    private Map<String, AAM> buildAvailableAAMs() throws Exception {
+        Map<String, AAM> availableAAMs = new HashMap<>();
+        availableAAMs.put(SecurityConstants.CORE_AAM_INSTANCE_ID, new AAM("", "", SecurityConstants.CORE_AAM_INSTANCE_ID, "",
+                new Certificate(CryptoHelper.convertX509ToPEM(issuingAAMCertificate)), new HashMap<>()));
+        return availableAAMs;
+    }
+
+    @Test
+    public void registryIsBounded() throws Exception {
+        IssuerKeysRegistry.setMaximumSize(2);
+        for (int i = 0; i < 5; i++)
+            assertTrue(IssuerKeysRegistry.register(CryptoHelper.createKeyPair().getPublic()));
+        assertEquals(2, IssuerKeysRegistry.size());
+    }
+
+    @Test
+    public void precomputedVerifierMatchesGenericOne() throws Exception {
+        assertTrue(IssuerKeysRegistry.register(issuingAAMPublicKey));
+        PrecomputedES256Verifier verifier = IssuerKeysRegistry.getVerifier(issuingAAMPublicKey);
+        PrivateKey forgeryKey = CryptoHelper.createKeyPair().getPrivate();
+
+        for (int i = 0; i < 100; i++) {
+            String token = buildToken(issuingAAMPrivateKey);
+            String forgedToken = buildToken(forgeryKey);
+            String tamperedToken = token.substring(0, token.length() - 5) + (token.endsWith("AAAAA") ? "BBBBB" : "AAAAA");
+
+            assertTrue(verifier.verify(token));
+            assertEquals(ES256Engine.verify(forgedToken, issuingAAMPublicKey), verifier.verify(forgedToken));
+            assertEquals(ES256Engine.verify(tamperedToken, issuingAAMPublicKey), verifier.verify(tamperedToken));
+            assertFalse(verifier.verify(forgedToken));
+        }
+        assertFalse(verifier.verify("a.b.c"));
+
+        String token = buildToken(issuingAAMPrivateKey);
+        assertEquals(ValidationStatus.VALID, JWTEngine.validateTokenString(token, issuingAAMPublicKey));
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, JWTEngine.validateTokenString(buildToken(forgeryKey)));
+    }
+
+    private String buildToken(PrivateKey signingKey) {
+        return DummyTokenIssuer.buildAuthorizationToken("testClient",
+                null,
+                issuingAAMPublicKey.getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "testIssuer",
+                issuingAAMPublicKey,
+                signingKey,
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+}
@@ -0,0 +1,90 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JWTClaimsReaderTest {
+
+    private static final String HEADER = "{\"alg\":\"ES256\"}";
+
+    @Test
+    public void base64UrlDecodingMatchesJdk() {
+        Random random = new Random(42);
+        for (int length = 0; length < 64; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = "x." + Base64.getUrlEncoder().withoutPadding().encodeToString(data) + ".y";
+            assertArrayEquals(data, Base64Url.decode(encoded, 2, encoded.length() - 2));
+        }
+        String padded = Base64.getUrlEncoder().encodeToString(new byte[]{1, 2, 3, 4});
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, Base64Url.decode(padded, 0, padded.length()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void base64UrlDecodingRejectsStandardAlphabet() {
+        Base64Url.decode("ab+/", 0, 4);
+    }
+
+    @Test
+    public void claimsStreamedFromHeaderAndPayload() throws Exception {
+        String token = buildToken("{\"jti\":\"1\",\"iss\":\"issuer\",\"sub\":\"subject\",\"iat\":1500000000,"
+                + "\"exp\":\"1500003600\",\"ipk\":\"ipk\",\"spk\":\"spk\",\"ttyp\":\"HOME\",\"hash\":\"ignored\","
+                + "\"SYMBIOTE_name\":\"value\",\"SYMBIOTE_number\":7}");
+        JWTClaims claims = JWTEngine.getClaimsFromToken(token);
+
+        assertEquals("ES256", claims.getAlg());
+        assertEquals("1", claims.getJti());
+        assertEquals("issuer", claims.getIss());
+        assertEquals("subject", claims.getSub());
+        assertEquals(Long.valueOf(1500000000000L), claims.getIat());
+        assertEquals(Long.valueOf(1500003600000L), claims.getExp());
+        assertEquals("ipk", claims.getIpk());
+        assertEquals("spk", claims.getSpk());
+        assertEquals("HOME", claims.getTtyp());
+        assertEquals(2, claims.getAtt().size());
+        assertEquals("value", claims.getAtt().get("name"));
+        assertEquals("7", claims.getAtt().get("number"));
+
+        // generic claims are still available on demand
+        assertEquals("ignored", ParsedJws.decode(token).getClaims().get("hash"));
+        assertEquals("ignored", ParsedJws.decode(token).getClaimAsString("hash"));
+        assertEquals("7", ParsedJws.decode(token).getClaimAsString("SYMBIOTE_number"));
+        assertNull(ParsedJws.decode(token).getClaimAsString("missing"));
+    }
+
+    @Test
+    public void malformedTokensRejected() {
+        assertMalformed("abc");
+        assertMalformed("abc.def");
+        assertMalformed(buildToken("{\"iat\":1500000000}").replaceAll("\\.[^.]*$", "."));
+        assertMalformed(buildToken("{\"sub\":\"subject\"}"));
+        assertMalformed(buildToken("{\"iat\":\"now\"}"));
+        assertMalformed(buildToken("{\"iat\":1500000000,\"exp\":null}"));
+        assertMalformed(buildToken("{\"iat\":1500000000,\"SYMBIOTE_name\":{\"nested\":1}}"));
+        assertMalformed(buildToken("{\"iat\":1500000000,\"sub\":[1]}"));
+        assertMalformed(buildToken("[1500000000]"));
+        assertMalformed(buildToken("{\"iat\":1500000000"));
+        assertMalformed("e30.!!.c2ln");
+    }
+
+    private static void assertMalformed(String token) {
+        try {
+            JWTEngine.getClaimsFromToken(token);
+            fail("Expected MalformedJWTException for " + token);
+        } catch (MalformedJWTException e) {
+            // expected
+        }
+    }
+
+    private static String buildToken(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(HEADER.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".c2ln";
+    }
+}
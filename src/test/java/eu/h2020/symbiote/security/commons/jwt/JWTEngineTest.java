@@ -0,0 +1,138 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.ValidationResult;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class JWTEngineTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+    private static final String ISSUER = "testIssuer";
+
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+    }
+
+    @After
+    public void tearDown() {
+        JWTEngine.setValidationPool(ForkJoinPool.commonPool());
+    }
+
+    @Test
+    public void validateTokensReturnsStatusPerDistinctToken() throws Exception {
+        String validToken = buildToken("client1", 3600000L, issuingAAMPublicKey, issuingAAMPrivateKey);
+        String otherValidToken = buildToken("client2", 3600000L, issuingAAMPublicKey, issuingAAMPrivateKey);
+        String expiredToken = buildToken("client3", -1000L, issuingAAMPublicKey, issuingAAMPrivateKey);
+        KeyPair forgeryKeyPair = CryptoHelper.createKeyPair();
+        String forgedToken = buildToken("client4", 3600000L, issuingAAMPublicKey, forgeryKeyPair.getPrivate());
+        String malformedToken = "malformed";
+
+        ForkJoinPool validationPool = new ForkJoinPool(4);
+        JWTEngine.setValidationPool(validationPool);
+        Map<String, ValidationStatus> statuses;
+        try {
+            statuses = JWTEngine.validateTokens(
+                    Arrays.asList(validToken, otherValidToken, expiredToken, forgedToken, malformedToken, validToken),
+                    issuer -> ISSUER.equals(issuer) ? issuingAAMPublicKey : null);
+        } finally {
+            validationPool.shutdown();
+        }
+
+        assertEquals(5, statuses.size());
+        assertEquals(ValidationStatus.VALID, statuses.get(validToken));
+        assertEquals(ValidationStatus.VALID, statuses.get(otherValidToken));
+        assertEquals(ValidationStatus.EXPIRED_TOKEN, statuses.get(expiredToken));
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, statuses.get(forgedToken));
+        assertEquals(ValidationStatus.UNKNOWN, statuses.get(malformedToken));
+        // same outcome as the single token path
+        for (String token : Arrays.asList(validToken, otherValidToken, expiredToken, forgedToken)) {
+            assertEquals(JWTEngine.validateTokenString(token, issuingAAMPublicKey), statuses.get(token));
+        }
+    }
+
+    @Test
+    public void validateTokensResolvesIssuerKeys() throws Exception {
+        String validToken = buildToken("client1", 3600000L, issuingAAMPublicKey, issuingAAMPrivateKey);
+
+        assertEquals(ValidationStatus.VALID,
+                JWTEngine.validateTokens(Collections.singleton(validToken), null).get(validToken));
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN,
+                JWTEngine.validateTokens(Collections.singleton(validToken), issuer -> null).get(validToken));
+        assertTrue(JWTEngine.validateTokens(Collections.emptyList(), null).isEmpty());
+    }
+
+    @Test
+    public void validateReturnsPreallocatedFailures() throws Exception {
+        String validToken = buildToken("client1", 3600000L, issuingAAMPublicKey, issuingAAMPrivateKey);
+        String expiredToken = buildToken("client2", -1000L, issuingAAMPublicKey, issuingAAMPrivateKey);
+        String forgedToken = buildToken("client3", 3600000L, issuingAAMPublicKey, CryptoHelper.createKeyPair().getPrivate());
+
+        assertSame(ValidationResult.VALID, JWTEngine.validate(validToken));
+        assertSame(ValidationResult.VALID, JWTEngine.validate(validToken, issuingAAMPublicKey));
+        assertSame(ValidationResult.of(ValidationStatus.EXPIRED_TOKEN), JWTEngine.validate(expiredToken));
+        assertSame(ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN), JWTEngine.validate(forgedToken));
+        assertSame(ValidationResult.MALFORMED_TOKEN, JWTEngine.validate("malformed"));
+        assertTrue(JWTEngine.validate("malformed").isError());
+        assertFalse(JWTEngine.validate(expiredToken).isError());
+
+        // the throwing API reports the same outcomes
+        assertEquals(ValidationStatus.EXPIRED_TOKEN, JWTEngine.validateTokenString(expiredToken));
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, JWTEngine.validateTokenString(forgedToken));
+        try {
+            JWTEngine.validateTokenString("malformed");
+            fail();
+        } catch (ValidationException e) {
+            // expected
+        }
+        try {
+            ValidationResult.UNSUPPORTED_ALGORITHM.getStatusOrThrow();
+            fail();
+        } catch (ValidationException e) {
+            assertEquals(ValidationResult.UNSUPPORTED_ALGORITHM.getMessage(), e.getMessage());
+        }
+
+        assertNotNull(Token.ofValid(ParsedJws.decode(validToken)));
+        assertNull(Token.ofValid(ParsedJws.decode(forgedToken)));
+    }
+
+    private String buildToken(String subject, long validity, PublicKey issuerPublicKey, PrivateKey signingKey) {
+        return DummyTokenIssuer.buildAuthorizationToken(subject,
+                null,
+                issuerPublicKey.getEncoded(),
+                Token.Type.HOME,
+                validity,
+                ISSUER,
+                issuerPublicKey,
+                signingKey,
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+}
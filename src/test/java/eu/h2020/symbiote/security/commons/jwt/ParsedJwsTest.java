@@ -0,0 +1,113 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
+import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ParsedJwsTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CLIENT_CERTIFICATE_ALIAS = "client-core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+    private PublicKey clientPublicKey;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+        clientPublicKey = ((X509Certificate) ks.getCertificate(CLIENT_CERTIFICATE_ALIAS)).getPublicKey();
+    }
+
+    @Test
+    public void decodeSuccess() throws Exception {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("name", "testClient");
+        ParsedJws parsedJws = ParsedJws.decode(buildToken(attributes, 3600000));
+
+        assertEquals("testClient", parsedJws.getJwtClaims().getSub());
+        assertEquals("testIssuer", parsedJws.getJwtClaims().getIss());
+        assertEquals(SecurityConstants.JWT_SIGNATURE_ALGORITHM_NAME, parsedJws.getJwtClaims().getAlg());
+        assertEquals(Token.Type.HOME.toString(), parsedJws.getJwtClaims().getTtyp());
+        assertEquals("testClient", parsedJws.getJwtClaims().getAtt().get("name"));
+        assertEquals(parsedJws.getJwtClaims().getJti(), parsedJws.getClaims().getId());
+        assertArrayEquals(issuingAAMPublicKey.getEncoded(), parsedJws.getIssuerPublicKey().getEncoded());
+        assertArrayEquals(clientPublicKey.getEncoded(), parsedJws.getSubjectPublicKey().getEncoded());
+    }
+
+    @Test
+    public void validationStatusAgainstIssuerAndOtherKey() throws Exception {
+        ParsedJws parsedJws = ParsedJws.parse(buildToken(null, 3600000));
+
+        assertEquals(ValidationStatus.VALID, parsedJws.getValidationStatus());
+        assertEquals(ValidationStatus.VALID, parsedJws.getValidationStatus(issuingAAMPublicKey));
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, parsedJws.getValidationStatus(CryptoHelper.createKeyPair().getPublic()));
+        // switching back to the issuer's key
+        assertEquals(ValidationStatus.VALID, parsedJws.getValidationStatus(issuingAAMPublicKey));
+    }
+
+    @Test
+    public void validationStatusExpired() throws Exception {
+        ParsedJws parsedJws = ParsedJws.parse(buildToken(null, -1000));
+        assertEquals(ValidationStatus.EXPIRED_TOKEN, parsedJws.getValidationStatus());
+    }
+
+    @Test(expected = MalformedJWTException.class)
+    public void decodeFailsForMissingParts() throws Exception {
+        ParsedJws.decode("header.payload");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void parseFailsForGarbage() throws Exception {
+        ParsedJws.parse("a.b.c");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void validationFailsForWrongAlgorithm() throws Exception {
+        String token = DummyTokenIssuer.buildAuthorizationToken("testClient",
+                null,
+                clientPublicKey.getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "testIssuer",
+                issuingAAMPublicKey,
+                issuingAAMPrivateKey,
+                DummyTokenIssuer.SignatureType.ABUSING);
+        ParsedJws.parse(token).getValidationStatus();
+    }
+
+    private String buildToken(Map<String, String> attributes, long validity) {
+        return DummyTokenIssuer.buildAuthorizationToken("testClient",
+                attributes,
+                clientPublicKey.getEncoded(),
+                Token.Type.HOME,
+                validity,
+                "testIssuer",
+                issuingAAMPublicKey,
+                issuingAAMPrivateKey,
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+}
@@ -0,0 +1,57 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+public class PublicKeysCacheTest {
+
+    @Before
+    public void setUp() {
+        ECDSAHelper.enableECDSAProvider();
+        PublicKeysCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        PublicKeysCache.setMaximumSize(PublicKeysCache.DEFAULT_MAXIMUM_SIZE);
+        PublicKeysCache.clear();
+    }
+
+    @Test
+    public void sameKeyInstanceReturned() throws Exception {
+        PublicKey publicKey = CryptoHelper.createKeyPair().getPublic();
+        String encodedKey = Base64.getEncoder().encodeToString(publicKey.getEncoded());
+
+        PublicKey decodedKey = PublicKeysCache.getPublicKey(encodedKey);
+        assertArrayEquals(publicKey.getEncoded(), decodedKey.getEncoded());
+        assertSame(decodedKey, PublicKeysCache.getPublicKey(encodedKey));
+        assertEquals(1, PublicKeysCache.size());
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        PublicKeysCache.setMaximumSize(2);
+        for (int i = 0; i < 5; i++) {
+            PublicKeysCache.getPublicKey(Base64.getEncoder().encodeToString(CryptoHelper.createKeyPair().getPublic().getEncoded()));
+        }
+        assertEquals(2, PublicKeysCache.size());
+    }
+
+    @Test(expected = InvalidKeySpecException.class)
+    public void malformedKeyIsNotCached() throws Exception {
+        try {
+            PublicKeysCache.getPublicKey(Base64.getEncoder().encodeToString("malformed".getBytes()));
+        } finally {
+            assertEquals(0, PublicKeysCache.size());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package eu.h2020.symbiote.security.commons.jwt;
+
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import static org.junit.Assert.*;
+
+public class VerifiedTokensCacheTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+    }
+
+    @After
+    public void tearDown() {
+        JWTEngine.disableVerifiedTokensCache();
+    }
+
+    @Test
+    public void repeatedValidationHitsTheCache() throws Exception {
+        JWTEngine.enableVerifiedTokensCache(100);
+        String token = buildToken();
+
+        assertEquals(ValidationStatus.VALID, JWTEngine.validateTokenString(token));
+        assertEquals(ValidationStatus.VALID, JWTEngine.validateTokenString(token));
+        new Token(token);
+
+        VerifiedTokensCache cache = JWTEngine.getVerifiedTokensCache();
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void failedVerificationIsNotCached() throws Exception {
+        JWTEngine.enableVerifiedTokensCache(100);
+        String token = buildToken();
+        PublicKey otherKey = CryptoHelper.createKeyPair().getPublic();
+
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, JWTEngine.validateTokenString(token, otherKey));
+        assertEquals(0, JWTEngine.getVerifiedTokensCache().size());
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, JWTEngine.validateTokenString(token, otherKey));
+
+        // valid entry must not be returned for a different key
+        assertEquals(ValidationStatus.VALID, JWTEngine.validateTokenString(token, issuingAAMPublicKey));
+        assertEquals(ValidationStatus.INVALID_TRUST_CHAIN, JWTEngine.validateTokenString(token, otherKey));
+        assertEquals(0, JWTEngine.getVerifiedTokensCache().getHitCount());
+    }
+
+    @Test
+    public void expiredEntriesAreDropped() throws Exception {
+        VerifiedTokensCache cache = new VerifiedTokensCache(10);
+        cache.putVerified("a.b.c", issuingAAMPublicKey, System.currentTimeMillis() - 1);
+        cache.putVerified("a.b.d", issuingAAMPublicKey, null);
+        assertEquals(0, cache.size());
+
+        cache.putVerified("a.b.e", issuingAAMPublicKey, System.currentTimeMillis() + 50);
+        assertTrue(cache.isVerified("a.b.e", issuingAAMPublicKey));
+        Thread.sleep(100);
+        assertFalse(cache.isVerified("a.b.e", issuingAAMPublicKey));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        VerifiedTokensCache cache = new VerifiedTokensCache(16);
+        long expirationTime = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 200; i++) {
+            cache.putVerified("a.b." + i, issuingAAMPublicKey, expirationTime);
+        }
+        assertTrue(cache.size() <= 16);
+        assertEquals(200 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void smallCacheIsBounded() {
+        VerifiedTokensCache cache = new VerifiedTokensCache(3);
+        long expirationTime = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 200; i++) {
+            cache.putVerified("a.b." + i, issuingAAMPublicKey, expirationTime);
+        }
+        assertTrue(cache.size() <= 3);
+        assertEquals(200 - cache.size(), cache.getEvictionCount());
+    }
+
+    private String buildToken() {
+        return DummyTokenIssuer.buildAuthorizationToken("testClient",
+                null,
+                issuingAAMPublicKey.getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "testIssuer",
+                issuingAAMPublicKey,
+                issuingAAMPrivateKey,
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+}
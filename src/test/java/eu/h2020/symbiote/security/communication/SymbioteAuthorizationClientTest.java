@@ -0,0 +1,165 @@
+package eu.h2020.symbiote.security.communication;
+
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
+import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
+import eu.h2020.symbiote.security.handler.IComponentSecurityHandler;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.helpers.MutualAuthenticationHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import eu.h2020.symbiote.security.utils.FakeClock;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.api.mockito.PowerMockito;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SymbioteAuthorizationClientTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+
+    private IComponentSecurityHandler handler;
+    private final FakeClock clock = new FakeClock();
+    private final List<Map<String, Collection<String>>> sentHeaders = new ArrayList<>();
+    private final AtomicLong lastTimestamp = new AtomicLong();
+    private final Client client = (request, options) -> {
+        sentHeaders.add(request.headers());
+        Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put(SecurityConstants.SECURITY_RESPONSE_HEADER, Collections.singletonList("serviceResponse"));
+        return Response.builder().status(200).headers(headers).build();
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        PublicKey issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        PrivateKey issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+        String token = DummyTokenIssuer.buildAuthorizationToken("testComponent",
+                null,
+                issuingAAMPublicKey.getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "",
+                issuingAAMPublicKey,
+                issuingAAMPrivateKey,
+                DummyTokenIssuer.SignatureType.PROPER);
+
+        MutualAuthenticationHelper.SERVICE_RESPONSE_EXPIRATION_TIME = 60;
+        handler = PowerMockito.mock(IComponentSecurityHandler.class);
+        when(handler.isReceivedServiceResponseVerified(any(), any(), any())).thenReturn(true);
+        when(handler.generateSecurityRequestUsingLocalCredentials()).thenAnswer(invocation -> {
+            long timestamp = clock.millis();
+            timestamp = timestamp - timestamp % 1000;
+            lastTimestamp.set(timestamp);
+            return new SecurityRequest(Collections.singleton(new SecurityCredentials(token,
+                    Optional.of("challenge" + timestamp),
+                    Optional.empty(),
+                    Optional.empty(),
+                    Optional.empty())), timestamp);
+        });
+    }
+
+    @Test
+    public void securityRequestReusedWithinWindow() throws Exception {
+        SymbioteAuthorizationClient authorizationClient = new SymbioteAuthorizationClient(handler, "service", "platform", client, 10000);
+        for (int i = 0; i < 10; i++)
+            assertEquals(200, authorizationClient.execute(buildRequest(i), new Request.Options()).status());
+
+        verify(handler, times(1)).generateSecurityRequestUsingLocalCredentials();
+        for (Map<String, Collection<String>> headers : sentHeaders) {
+            assertEquals(sentHeaders.get(0).get(SecurityConstants.SECURITY_CREDENTIALS_HEADER_PREFIX + 1),
+                    headers.get(SecurityConstants.SECURITY_CREDENTIALS_HEADER_PREFIX + 1));
+        }
+        // the request's own headers are kept
+        assertEquals(Collections.singletonList("9"), sentHeaders.get(9).get("x-request"));
+    }
+
+    @Test
+    public void securityRequestGeneratedPerCallWithoutWindow() throws Exception {
+        SymbioteAuthorizationClient authorizationClient = new SymbioteAuthorizationClient(handler, "service", "platform", client, 0);
+        for (int i = 0; i < 3; i++)
+            authorizationClient.execute(buildRequest(i), new Request.Options());
+
+        verify(handler, times(3)).generateSecurityRequestUsingLocalCredentials();
+    }
+
+    @Test
+    public void securityRequestRegeneratedBeforeWindowEnds() throws Exception {
+        SymbioteAuthorizationClient authorizationClient = new SymbioteAuthorizationClient(handler, "service", "platform", client, 2000);
+        authorizationClient.setRegenerationExecutor(Runnable::run);
+        authorizationClient.setClock(clock);
+        authorizationClient.execute(buildRequest(0), new Request.Options());
+        long firstTimestamp = lastTimestamp.get();
+
+        // within the last quarter of the window
+        clock.advance(firstTimestamp + 1600 - clock.millis());
+        authorizationClient.execute(buildRequest(1), new Request.Options());
+        verify(handler, times(2)).generateSecurityRequestUsingLocalCredentials();
+        // the call itself still used the previous request
+        assertEquals(Collections.singletonList(String.valueOf(firstTimestamp)),
+                sentHeaders.get(1).get(SecurityConstants.SECURITY_CREDENTIALS_TIMESTAMP_HEADER));
+
+        authorizationClient.execute(buildRequest(2), new Request.Options());
+        assertEquals(Collections.singletonList(String.valueOf(lastTimestamp.get())),
+                sentHeaders.get(2).get(SecurityConstants.SECURITY_CREDENTIALS_TIMESTAMP_HEADER));
+        verify(handler, times(2)).generateSecurityRequestUsingLocalCredentials();
+
+        // past the window of the regenerated request nothing is reused
+        clock.advance(2000);
+        authorizationClient.execute(buildRequest(3), new Request.Options());
+        verify(handler, times(3)).generateSecurityRequestUsingLocalCredentials();
+    }
+
+    @Test
+    public void securityRequestDroppedWhenRejected() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Client rejectingFirstCallClient = (request, options) -> {
+            if (calls.getAndIncrement() == 0)
+                return Response.builder().status(401).headers(new HashMap<>()).build();
+            return client.execute(request, options);
+        };
+        SymbioteAuthorizationClient authorizationClient = new SymbioteAuthorizationClient(handler, "service", "platform", rejectingFirstCallClient, 10000);
+        authorizationClient.setClock(clock);
+        assertEquals(401, authorizationClient.execute(buildRequest(0), new Request.Options()).status());
+        verify(handler, times(1)).generateSecurityRequestUsingLocalCredentials();
+
+        // still within the window, but the rejected request isn't sent again
+        assertEquals(200, authorizationClient.execute(buildRequest(1), new Request.Options()).status());
+        verify(handler, times(2)).generateSecurityRequestUsingLocalCredentials();
+        assertEquals(200, authorizationClient.execute(buildRequest(2), new Request.Options()).status());
+        verify(handler, times(2)).generateSecurityRequestUsingLocalCredentials();
+    }
+
+    @Test
+    public void securityRequestGeneratedPerCallByDefault() throws Exception {
+        SymbioteAuthorizationClient authorizationClient = new SymbioteAuthorizationClient(handler, "service", "platform", client);
+        for (int i = 0; i < 3; i++)
+            authorizationClient.execute(buildRequest(i), new Request.Options());
+
+        verify(handler, times(3)).generateSecurityRequestUsingLocalCredentials();
+    }
+
+    private static Request buildRequest(int number) {
+        Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("x-request", Collections.singletonList(String.valueOf(number)));
+        return Request.create("GET", "http://localhost/resource", headers, null, null);
+    }
+}
@@ -0,0 +1,151 @@
+package eu.h2020.symbiote.security.handler;
+
+import eu.h2020.symbiote.security.commons.Certificate;
+import eu.h2020.symbiote.security.commons.exceptions.custom.SecurityHandlerException;
+import eu.h2020.symbiote.security.utils.FakeClock;
+import org.junit.Test;
+
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ComponentCertificatesCacheTest {
+
+    private final FakeClock clock = new FakeClock();
+    private final ComponentCertificatesCache cache = new ComponentCertificatesCache(clock);
+    private final AtomicInteger fetchCount = new AtomicInteger();
+
+    private Certificate fetch(String componentIdentifier, String platformIdentifier) throws
+            SecurityHandlerException {
+        try {
+            return new Certificate(componentIdentifier + "@" + platformIdentifier + "#" + fetchCount.incrementAndGet());
+        } catch (CertificateException e) {
+            throw new SecurityHandlerException(e.getMessage(), e);
+        }
+    }
+
+    @Test
+    public void certificateFetchedOnce() throws
+            SecurityHandlerException {
+        Certificate certificate = cache.get("aam", "platform", this::fetch);
+        assertSame(certificate, cache.get("aam", "platform", this::fetch));
+        assertEquals(1, fetchCount.get());
+
+        // different key
+        assertNotEquals(certificate.getCertificateString(), cache.get("rap", "platform", this::fetch).getCertificateString());
+        assertEquals(2, fetchCount.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void expiredCertificateFetchedAgain() throws
+            Exception {
+        cache.setTimeToLive(50);
+        Certificate certificate = cache.get("aam", "platform", this::fetch);
+        clock.advance(50);
+        assertNotSame(certificate, cache.get("aam", "platform", this::fetch));
+        assertEquals(2, fetchCount.get());
+    }
+
+    @Test
+    public void disabledCacheFetchesEachTime() throws
+            SecurityHandlerException {
+        cache.setTimeToLive(0);
+        cache.get("aam", "platform", this::fetch);
+        cache.get("aam", "platform", this::fetch);
+        assertEquals(2, fetchCount.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void refreshReplacesOnlyStaleCertificate() throws
+            SecurityHandlerException {
+        Certificate stale = cache.get("aam", "platform", this::fetch);
+        clock.advance(ComponentCertificatesCache.DEFAULT_MINIMUM_REFRESH_INTERVAL);
+        Certificate refreshed = cache.refresh("aam", "platform", stale, this::fetch);
+        assertNotSame(stale, refreshed);
+        assertSame(refreshed, cache.get("aam", "platform", this::fetch));
+        // another thread holding the stale certificate reuses the already refreshed one
+        assertSame(refreshed, cache.refresh("aam", "platform", stale, this::fetch));
+        assertEquals(2, fetchCount.get());
+    }
+
+    @Test
+    public void refreshesRateLimited() throws
+            SecurityHandlerException {
+        cache.setMinimumRefreshInterval(1000);
+        Certificate stale = cache.get("aam", "platform", this::fetch);
+        // fetched too recently, the caller fails with the cached one
+        assertSame(stale, cache.refresh("aam", "platform", stale, this::fetch));
+        clock.advance(999);
+        assertSame(stale, cache.refresh("aam", "platform", stale, this::fetch));
+        assertEquals(1, fetchCount.get());
+
+        clock.advance(1);
+        Certificate refreshed = cache.refresh("aam", "platform", stale, this::fetch);
+        assertNotSame(stale, refreshed);
+        assertSame(refreshed, cache.refresh("aam", "platform", refreshed, this::fetch));
+        assertEquals(2, fetchCount.get());
+        // other components are limited separately
+        Certificate other = cache.get("rap", "platform", this::fetch);
+        assertSame(other, cache.refresh("rap", "platform", other, this::fetch));
+        assertEquals(3, fetchCount.get());
+    }
+
+    @Test
+    public void failedFetchNotCached() {
+        try {
+            cache.get("aam", "platform", (component, platform) -> {
+                throw new SecurityHandlerException("AAM unavailable");
+            });
+            fail();
+        } catch (SecurityHandlerException e) {
+            assertEquals("AAM unavailable", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void concurrentFetchesCollapsed() throws
+            Exception {
+        int threads = 8;
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        ComponentCertificatesCache.CertificateFetcher slowFetcher = (component, platform) -> {
+            fetchStarted.countDown();
+            try {
+                releaseFetch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return fetch(component, platform);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Certificate>> certificates = new ArrayList<>();
+            certificates.add(executor.submit(() -> cache.get("aam", "platform", slowFetcher)));
+            assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < threads; i++)
+                certificates.add(executor.submit(() -> cache.get("aam", "platform", slowFetcher)));
+            // letting the waiting threads reach the pending fetch
+            Thread.sleep(100);
+            releaseFetch.countDown();
+
+            Certificate certificate = certificates.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Certificate> future : certificates)
+                assertSame(certificate, future.get(5, TimeUnit.SECONDS));
+            assertEquals(1, fetchCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
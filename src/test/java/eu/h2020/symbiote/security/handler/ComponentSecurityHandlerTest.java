@@ -1,12 +1,34 @@
 package eu.h2020.symbiote.security.handler;
 
 import eu.h2020.symbiote.security.ComponentSecurityHandlerFactory;
+import eu.h2020.symbiote.security.commons.Certificate;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.credentials.BoundCredentials;
+import eu.h2020.symbiote.security.commons.credentials.HomeCredentials;
 import eu.h2020.symbiote.security.commons.exceptions.custom.SecurityHandlerException;
+import eu.h2020.symbiote.security.communication.payloads.AAM;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.helpers.MutualAuthenticationHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import eu.h2020.symbiote.security.utils.FakeClock;
 import org.junit.After;
 import org.junit.Test;
 import org.powermock.api.mockito.PowerMockito;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
 
 /**
  * @author Mikołaj Dobski (PSNC)
@@ -86,6 +108,66 @@ public class ComponentSecurityHandlerTest {
                 goodComponentId + "@" + goodPlatformId);
     }
 
+    @Test
+    public void serviceResponseSharedWithinTimeSlice() throws
+            Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream("./src/test/resources/core.p12"), "1234567".toCharArray());
+        X509Certificate aamX509Certificate = (X509Certificate) ks.getCertificate("core-1");
+        PrivateKey aamPrivateKey = (PrivateKey) ks.getKey("core-1", "1234567".toCharArray());
+        Certificate aamCertificate = new Certificate(CryptoHelper.convertX509ToPEM(aamX509Certificate));
+        AAM localAAM = new AAM("irrelevant", goodPlatformId, "", aamCertificate, new HashMap<>());
+        Token homeToken = new Token(DummyTokenIssuer.buildAuthorizationToken(goodComponentId,
+                null,
+                aamX509Certificate.getPublicKey().getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                goodPlatformId,
+                aamX509Certificate.getPublicKey(),
+                aamPrivateKey,
+                DummyTokenIssuer.SignatureType.PROPER));
+        HomeCredentials homeCredentials = new HomeCredentials(localAAM, "irrelevant", goodComponentId, aamCertificate, aamPrivateKey);
+        homeCredentials.homeToken = homeToken;
+
+        ISecurityHandler mock = PowerMockito.mock(ISecurityHandler.class);
+        when(mock.getAvailableAAMs("irrelevant")).thenReturn(Collections.singletonMap(goodPlatformId, localAAM));
+        when(mock.getAcquiredCredentials()).thenReturn(Collections.singletonMap(goodPlatformId, new BoundCredentials(homeCredentials)));
+        when(mock.getComponentCertificate(SecurityConstants.AAM_COMPONENT_NAME, goodPlatformId)).thenReturn(aamCertificate);
+
+        MutualAuthenticationHelper.SERVICE_RESPONSE_EXPIRATION_TIME = 60;
+        ComponentSecurityHandler componentSecurityHandler = new ComponentSecurityHandler(
+                mock,
+                "irrelevant",
+                "irrelevant",
+                "irrelevant",
+                goodComponentId + "@" + goodPlatformId);
+        long timeSlice = 2000;
+        // 100 ms into a slice
+        FakeClock clock = new FakeClock(System.currentTimeMillis() / timeSlice * timeSlice + 100);
+        componentSecurityHandler.setClock(clock);
+        componentSecurityHandler.setSigningExecutor(Runnable::run);
+        componentSecurityHandler.setServiceResponseTimeSlice(timeSlice);
+        clearInvocations(mock);
+
+        // each signed response fetches the component certificate once
+        String serviceResponse = componentSecurityHandler.generateServiceResponse();
+        for (int i = 0; i < 10; i++)
+            assertEquals(serviceResponse, componentSecurityHandler.generateServiceResponse());
+        verify(mock, times(1)).getComponentCertificate(SecurityConstants.AAM_COMPONENT_NAME, goodPlatformId);
+        assertTrue(MutualAuthenticationHelper.isServiceResponseVerified(serviceResponse, aamCertificate));
+
+        // the next slice's response is signed ahead during the last quarter of the slice
+        clock.advance(1600);
+        assertEquals(serviceResponse, componentSecurityHandler.generateServiceResponse());
+        verify(mock, times(2)).getComponentCertificate(SecurityConstants.AAM_COMPONENT_NAME, goodPlatformId);
+        clock.advance(400);
+        String nextServiceResponse = componentSecurityHandler.generateServiceResponse();
+        assertNotEquals(serviceResponse, nextServiceResponse);
+        verify(mock, times(2)).getComponentCertificate(SecurityConstants.AAM_COMPONENT_NAME, goodPlatformId);
+        assertTrue(MutualAuthenticationHelper.isServiceResponseVerified(nextServiceResponse, aamCertificate));
+    }
+
     @After
     public void deleteKeystore() {
         File file = new File("irrelevant");
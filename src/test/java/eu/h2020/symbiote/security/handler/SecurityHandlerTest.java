@@ -5,6 +5,7 @@ import eu.h2020.symbiote.security.commons.Certificate;
 import eu.h2020.symbiote.security.commons.SecurityConstants;
 import eu.h2020.symbiote.security.commons.Token;
 import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
+import eu.h2020.symbiote.security.commons.jwt.IssuerKeysRegistry;
 import eu.h2020.symbiote.security.communication.AAMClient;
 import eu.h2020.symbiote.security.communication.payloads.AAM;
 import eu.h2020.symbiote.security.communication.payloads.AvailableAAMsCollection;
@@ -33,6 +34,10 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
 
 
 @RunWith(PowerMockRunner.class)
@@ -124,7 +129,15 @@ public class SecurityHandlerTest {
         logger.info("----------------------------");
         logger.info("testGetAvailableAAMs starts");
         String aamInstanceId = "id-instance-123";
+        IssuerKeysRegistry.clear();
+        // fetching the AAMs while building its wallet
+        testclient = new SecurityHandler(keystorePath, keystorePassword, "http://test");
+        // all the AAMs share the same certificate
+        assertEquals(1, IssuerKeysRegistry.size());
+        // the unchanged AAMs aren't preloaded again
+        IssuerKeysRegistry.clear();
         Map<String, AAM> result = testclient.getAvailableAAMs(getHomeAMM(aamInstanceId));
+        assertEquals(0, IssuerKeysRegistry.size());
 
         logger.info("TEST RESULT --> Map<String, AAM>: " + result);
         assert result != null;
@@ -194,6 +207,42 @@ public class SecurityHandlerTest {
     }
 
 
+    @Test
+    public void testConcurrentLoginsShareSingleRequest() throws
+            Throwable {
+        testclient.getCertificate(homeAAM, "usu1", "pass1", "clientID");
+
+        String validToken = getTokenString(serverkeystorePath, serverkeystorePassword, serveralias);
+        int logins = 8;
+        CountDownLatch started = new CountDownLatch(logins);
+        AtomicInteger homeTokenRequests = new AtomicInteger();
+        Mockito.when(aamClient.getHomeToken(Mockito.anyString())).thenAnswer(invocation -> {
+            homeTokenRequests.incrementAndGet();
+            // holding the request until all the logins started, those not sharing it then reuse its token
+            started.await(10, TimeUnit.SECONDS);
+            return validToken;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(logins);
+        try {
+            List<Future<Token>> tokens = new ArrayList<>();
+            for (int i = 0; i < logins; i++)
+                tokens.add(executor.submit(() -> {
+                    // as the login does, but telling when the token it finds stale was picked
+                    Token staleToken = testclient.getAcquiredCredentials().get(homeAAMId).homeCredentials.homeToken;
+                    started.countDown();
+                    return testclient.refreshHomeToken(homeAAM, staleToken);
+                }));
+
+            for (Future<Token> token : tokens)
+                assertEquals(validToken, token.get().getToken());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, homeTokenRequests.get());
+        assertEquals(validToken, testclient.getAcquiredCredentials().get(homeAAMId).homeCredentials.homeToken.getToken());
+    }
+
     @Test
     public void testLoginListOfAAMHomeCredentials() throws
             Throwable {
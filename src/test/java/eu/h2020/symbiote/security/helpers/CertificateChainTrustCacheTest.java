@@ -0,0 +1,76 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.utils.DummyCertificateIssuer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.*;
+
+public class CertificateChainTrustCacheTest {
+
+    private String coreAAMCertificatePEM;
+    private String platformAAMCertificatePEM;
+    private String clientCertificatePEM;
+    private String otherClientCertificatePEM;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        CertificateChainTrustCache.clear();
+
+        KeyPair coreAAMKeyPair = CryptoHelper.createKeyPair();
+        X509Certificate coreAAMCertificate = DummyCertificateIssuer.buildCoreAAMCertificate(coreAAMKeyPair);
+        KeyPair platformAAMKeyPair = CryptoHelper.createKeyPair();
+        X509Certificate platformAAMCertificate = DummyCertificateIssuer.buildPlatformAAMCertificate("platform-1", platformAAMKeyPair, coreAAMCertificate, coreAAMKeyPair.getPrivate());
+        coreAAMCertificatePEM = CryptoHelper.convertX509ToPEM(coreAAMCertificate);
+        platformAAMCertificatePEM = CryptoHelper.convertX509ToPEM(platformAAMCertificate);
+        clientCertificatePEM = CryptoHelper.convertX509ToPEM(DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), platformAAMCertificate, platformAAMKeyPair.getPrivate()));
+        // issued by the core AAM instead of the platform AAM
+        otherClientCertificatePEM = CryptoHelper.convertX509ToPEM(DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), coreAAMCertificate, coreAAMKeyPair.getPrivate()));
+    }
+
+    @After
+    public void tearDown() {
+        CertificateChainTrustCache.setUntrustedTimeToLive(CertificateChainTrustCache.DEFAULT_UNTRUSTED_TIME_TO_LIVE);
+        CertificateChainTrustCache.clear();
+    }
+
+    @Test
+    public void trustedChainRemembered() throws Exception {
+        long hits = CertificateChainTrustCache.getHitCount();
+        assertTrue(CryptoHelper.isClientCertificateChainTrusted(coreAAMCertificatePEM, platformAAMCertificatePEM, clientCertificatePEM));
+        assertEquals(1, CertificateChainTrustCache.size());
+        assertTrue(CryptoHelper.isClientCertificateChainTrusted(coreAAMCertificatePEM, platformAAMCertificatePEM, clientCertificatePEM));
+        assertEquals(hits + 1, CertificateChainTrustCache.getHitCount());
+        assertEquals(0, CertificateChainTrustCache.untrustedSize());
+    }
+
+    @Test
+    public void untrustedChainRememberedSeparately() throws Exception {
+        long hits = CertificateChainTrustCache.getHitCount();
+        assertFalse(CryptoHelper.isClientCertificateChainTrusted(coreAAMCertificatePEM, platformAAMCertificatePEM, otherClientCertificatePEM));
+        assertFalse(CryptoHelper.isClientCertificateChainTrusted(coreAAMCertificatePEM, platformAAMCertificatePEM, otherClientCertificatePEM));
+        assertEquals(hits + 1, CertificateChainTrustCache.getHitCount());
+        assertEquals(0, CertificateChainTrustCache.size());
+        assertEquals(1, CertificateChainTrustCache.untrustedSize());
+
+        // the same client certificate is trusted when presented as issued by the core AAM
+        assertTrue(CryptoHelper.isClientCertificateChainTrusted(coreAAMCertificatePEM, coreAAMCertificatePEM, otherClientCertificatePEM));
+    }
+
+    @Test
+    public void untrustedChainExpires() throws Exception {
+        CertificateChainTrustCache.setUntrustedTimeToLive(50);
+        assertFalse(CryptoHelper.isClientCertificateChainTrusted(coreAAMCertificatePEM, platformAAMCertificatePEM, otherClientCertificatePEM));
+        Thread.sleep(100);
+        long misses = CertificateChainTrustCache.getMissCount();
+        assertFalse(CryptoHelper.isClientCertificateChainTrusted(coreAAMCertificatePEM, platformAAMCertificatePEM, otherClientCertificatePEM));
+        assertEquals(misses + 1, CertificateChainTrustCache.getMissCount());
+    }
+}
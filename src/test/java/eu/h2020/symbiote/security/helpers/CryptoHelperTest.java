@@ -201,4 +201,23 @@ public class CryptoHelperTest {
         assertFalse(CryptoHelper.isClientCertificateChainTrusted(wrongSigningAAMCertificatePEM, wrongSigningAAMCertificatePEM, applicationCertificatePEM));
     }
 
+    @Test
+    public void directChainVerificationMatchesPKIX() throws Exception {
+        String[][] chains = {
+                {rightCoreAAMCertificatePEM, rightSigningAAMCertificatePEM, applicationCertificatePEM},
+                {rightSigningAAMCertificatePEM, rightSigningAAMCertificatePEM, applicationCertificatePEM},
+                {wrongSigningAAMCertificatePEM, wrongSigningAAMCertificatePEM, applicationCertificatePEM},
+                {rightCoreAAMCertificatePEM, wrongSigningAAMCertificatePEM, applicationCertificatePEM},
+                {rightCoreAAMCertificatePEM, rightCoreAAMCertificatePEM, applicationCertificatePEM},
+                {rightCoreAAMCertificatePEM, rightCoreAAMCertificatePEM, rightSigningAAMCertificatePEM}};
+        for (String[] chain : chains) {
+            ParsedCertificatesCache.ParsedCertificate core = ParsedCertificatesCache.parse(chain[0]);
+            ParsedCertificatesCache.ParsedCertificate signing = ParsedCertificatesCache.parse(chain[1]);
+            ParsedCertificatesCache.ParsedCertificate client = ParsedCertificatesCache.parse(chain[2]);
+            boolean signedByCoreAAM = chain[0].equals(chain[1]);
+            assertEquals(CryptoHelper.isClientCertificateChainTrustedByPKIX(core.getX509Certificate(), signing.getX509Certificate(), client.getX509Certificate(), signedByCoreAAM),
+                    SymbioteCertificateChainVerifier.isTrusted(core, signing, client, signedByCoreAAM));
+        }
+    }
+
 }
\ No newline at end of file
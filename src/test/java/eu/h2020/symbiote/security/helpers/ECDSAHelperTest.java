@@ -0,0 +1,51 @@
+package eu.h2020.symbiote.security.helpers;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ECDSAHelperTest {
+
+    @Test
+    public void providerInstalledOnce() {
+        ECDSAHelper.enableECDSAProvider();
+        ECDSAHelper.enableECDSAProvider();
+
+        Provider provider = ECDSAHelper.getProvider();
+        assertSame(Security.getProvider(BouncyCastleProvider.PROVIDER_NAME), provider);
+        int installedCount = 0;
+        for (Provider installedProvider : Security.getProviders()) {
+            if (BouncyCastleProvider.PROVIDER_NAME.equals(installedProvider.getName()))
+                installedCount++;
+        }
+        assertEquals(1, installedCount);
+    }
+
+    @Test
+    public void enginesCachedPerThread() throws Exception {
+        MessageDigest messageDigest = ECDSAHelper.getMessageDigest("SHA-256");
+        // leftover state must not leak into the next use
+        messageDigest.update((byte) 1);
+        assertSame(messageDigest, ECDSAHelper.getMessageDigest("SHA-256"));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(new byte[0]),
+                ECDSAHelper.getMessageDigest("SHA-256").digest());
+        assertSame(ECDSAHelper.getKeyFactory(), ECDSAHelper.getKeyFactory());
+        assertSame(ECDSAHelper.getCertificateFactory(), ECDSAHelper.getCertificateFactory());
+        assertSame(ECDSAHelper.getSignature("SHA256withECDSA"), ECDSAHelper.getSignature("SHA256withECDSA"));
+        assertEquals(BouncyCastleProvider.PROVIDER_NAME, ECDSAHelper.getKeyFactory().getProvider().getName());
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            MessageDigest otherThreadDigest = executorService.submit(() -> ECDSAHelper.getMessageDigest("SHA-256")).get();
+            assertNotSame(messageDigest, otherThreadDigest);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package eu.h2020.symbiote.security.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class KeyPairPoolTest {
+
+    @Before
+    public void setUp() {
+        ECDSAHelper.enableECDSAProvider();
+    }
+
+    @After
+    public void tearDown() {
+        KeyPairPool.disable();
+    }
+
+    private static void awaitPoolSize(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (KeyPairPool.size() < size && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(size, KeyPairPool.size());
+    }
+
+    @Test
+    public void poolFilledToHighWatermark() throws Exception {
+        KeyPairPool.enable(2, 4);
+        assertTrue(KeyPairPool.isEnabled());
+        awaitPoolSize(4);
+
+        long pooledCount = KeyPairPool.getPooledCount();
+        KeyPair pair = KeyPairPool.take();
+        assertNotNull(pair.getPrivate());
+        assertEquals(pooledCount + 1, KeyPairPool.getPooledCount());
+        assertEquals(3, KeyPairPool.size());
+
+        // dropping below the low watermark refills the pool
+        KeyPairPool.take();
+        KeyPairPool.take();
+        awaitPoolSize(4);
+    }
+
+    @Test
+    public void keyPairsHandedOutOnce() throws Exception {
+        KeyPairPool.enable(4, 8);
+        awaitPoolSize(8);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<KeyPair>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++)
+                futures.add(executor.submit(KeyPairPool::take));
+            Set<String> privateKeys = new HashSet<>();
+            for (Future<KeyPair> future : futures)
+                assertTrue(privateKeys.add(Base64.getEncoder().encodeToString(future.get().getPrivate().getEncoded())));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void disabledPoolGeneratesOnDemand() throws Exception {
+        KeyPairPool.enable(1, 2);
+        KeyPairPool.disable();
+        assertFalse(KeyPairPool.isEnabled());
+        assertEquals(0, KeyPairPool.size());
+
+        long generatedCount = KeyPairPool.getGeneratedCount();
+        assertNotNull(KeyPairPool.take());
+        assertEquals(generatedCount + 1, KeyPairPool.getGeneratedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lowWatermarkAboveHighRejected() throws Exception {
+        KeyPairPool.enable(4, 2);
+    }
+}
@@ -5,11 +5,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.h2020.symbiote.security.commons.Certificate;
 import eu.h2020.symbiote.security.commons.SecurityConstants;
 import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.ValidationResult;
 import eu.h2020.symbiote.security.commons.credentials.AuthorizationCredentials;
 import eu.h2020.symbiote.security.commons.credentials.HomeCredentials;
+import eu.h2020.symbiote.security.commons.enums.ValidationStatus;
 import eu.h2020.symbiote.security.commons.exceptions.custom.InvalidArgumentsException;
 import eu.h2020.symbiote.security.commons.exceptions.custom.MalformedJWTException;
 import eu.h2020.symbiote.security.commons.exceptions.custom.ValidationException;
+import eu.h2020.symbiote.security.commons.jwt.ES256Engine;
+import eu.h2020.symbiote.security.commons.jwt.JWTEngine;
+import eu.h2020.symbiote.security.commons.jwt.ParsedJws;
 import eu.h2020.symbiote.security.communication.payloads.AAM;
 import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
 import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
@@ -131,6 +136,35 @@ public class MutualAuthenticationHelperTest {
         assertTrue(MutualAuthenticationHelper.isSecurityRequestVerified(securityRequestCertsAttached));
     }
 
+    @Test
+    public void verifySecurityRequestChecksClaimsBeforeSignatures() throws Exception {
+        MutualAuthenticationHelper.SERVICE_RESPONSE_EXPIRATION_TIME = 60;
+        SecurityRequest securityRequest = MutualAuthenticationHelper.getSecurityRequest(authorizationCredentialsSet, false);
+        SecurityCredentials securityCredentials = securityRequest.getSecurityCredentials().iterator().next();
+        JWTEngine.enableVerifiedTokensCache(10);
+        try {
+            // challenge not matching the request timestamp is rejected without verifying any signature
+            SecurityRequest replayedRequest = new SecurityRequest(securityRequest.getSecurityCredentials(), securityRequest.getTimestamp() - 1000);
+            assertSame(ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN), MutualAuthenticationHelper.verifySecurityRequest(replayedRequest));
+            assertEquals(0, JWTEngine.getVerifiedTokensCache().getMissCount());
+
+            // the token and the challenge are verified once each
+            assertSame(ValidationResult.VALID, MutualAuthenticationHelper.verifySecurityRequest(securityRequest));
+            assertEquals(2, JWTEngine.getVerifiedTokensCache().getMissCount());
+        } finally {
+            JWTEngine.disableVerifiedTokensCache();
+        }
+
+        // challenge with the right claims signed with a wrong key
+        Map<String, Object> challengeClaims = new LinkedHashMap<>(ParsedJws.decode(securityCredentials.getAuthenticationChallenge()).getClaims());
+        String forgedChallenge = ES256Engine.sign(challengeClaims, CryptoHelper.createKeyPair().getPrivate());
+        Set<SecurityCredentials> forgedCredentials = new HashSet<>();
+        forgedCredentials.add(new SecurityCredentials(securityCredentials.getToken(), Optional.of(forgedChallenge), Optional.empty(), Optional.empty(), Optional.empty()));
+        SecurityRequest forgedRequest = new SecurityRequest(forgedCredentials, securityRequest.getTimestamp());
+        assertSame(ValidationResult.of(ValidationStatus.INVALID_TRUST_CHAIN), MutualAuthenticationHelper.verifySecurityRequest(forgedRequest));
+        assertFalse(MutualAuthenticationHelper.isSecurityRequestVerified(forgedRequest));
+    }
+
     @Test
     public void getServiceResponseSuccess() throws
             NoSuchAlgorithmException,
@@ -169,6 +203,40 @@ public class MutualAuthenticationHelperTest {
         assertTrue(MutualAuthenticationHelper.isServiceResponseVerified(serviceResponse, new Certificate(CryptoHelper.convertX509ToPEM(serviceCertificate))));
     }
 
+    @Test(expected = CertificateException.class)
+    public void isServiceResponseVerifiedFailDueToWrongCertificate() throws
+            Exception {
+
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(SERVICE_CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        X509Certificate serviceCertificate = (X509Certificate) ks.getCertificate(SERVICE_CERTIFICATE_ALIAS);
+        // response signed with a key other than the certificate's one
+        String serviceResponse = MutualAuthenticationHelper.getServiceResponse(CryptoHelper.createKeyPair().getPrivate(), new Date().getTime());
+
+        MutualAuthenticationHelper.isServiceResponseVerified(serviceResponse, new Certificate(CryptoHelper.convertX509ToPEM(serviceCertificate)));
+    }
+
+    @Test
+    public void isServiceResponseVerifiedRecordsStageTimings() throws
+            Exception {
+
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(SERVICE_CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        X509Certificate serviceCertificate = (X509Certificate) ks.getCertificate(SERVICE_CERTIFICATE_ALIAS);
+        PrivateKey servicePrivateKey = (PrivateKey) ks.getKey(SERVICE_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+        Certificate certificate = new Certificate(CryptoHelper.convertX509ToPEM(serviceCertificate));
+        String serviceResponse = MutualAuthenticationHelper.getServiceResponse(servicePrivateKey, new Date().getTime());
+
+        ServiceResponseVerificationTimings timings = MutualAuthenticationHelper.getServiceResponseVerificationTimings();
+        timings.reset();
+        assertTrue(MutualAuthenticationHelper.isServiceResponseVerified(serviceResponse, certificate));
+        assertTrue(MutualAuthenticationHelper.isServiceResponseVerified(serviceResponse, certificate));
+        for (ServiceResponseVerificationTimings.Stage stage : ServiceResponseVerificationTimings.Stage.values())
+            assertEquals(2, timings.getCount(stage));
+        // the key is parsed once per certificate
+        assertSame(certificate.getPublicKey(), certificate.getPublicKey());
+    }
+
     @Test
     public void isServiceResponseVerifiedFailDueToBadHash() throws
             NoSuchProviderException,
@@ -0,0 +1,119 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.commons.Certificate;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.communication.payloads.AAM;
+import eu.h2020.symbiote.security.communication.payloads.AvailableAAMsCollection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ParsedCertificatesCacheTest {
+
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+    private static final String OTHER_CERTIFICATE_LOCATION = "./src/test/resources/platform_1.p12";
+    private static final String OTHER_CERTIFICATE_ALIAS = "platform-1-1-c1";
+
+    @Before
+    public void setUp() {
+        ECDSAHelper.enableECDSAProvider();
+        ParsedCertificatesCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        ParsedCertificatesCache.setMaximumSize(ParsedCertificatesCache.DEFAULT_MAXIMUM_SIZE);
+        ParsedCertificatesCache.clear();
+    }
+
+    private static X509Certificate loadCertificate(String location, String alias) throws Exception {
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(location), CERTIFICATE_PASSWORD.toCharArray());
+        return (X509Certificate) ks.getCertificate(alias);
+    }
+
+    @Test
+    public void equalCertificatesShareParsedInstance() throws Exception {
+        X509Certificate x509Certificate = loadCertificate(CERTIFICATE_LOCATION, CERTIFICATE_ALIAS);
+        String pem = CryptoHelper.convertX509ToPEM(x509Certificate);
+
+        Certificate certificate = new Certificate(pem);
+        Certificate sameCertificate = new Certificate(pem);
+        assertEquals(x509Certificate, certificate.getX509());
+        assertSame(certificate.getX509(), sameCertificate.getX509());
+        assertSame(certificate.getPublicKey(), sameCertificate.getPublicKey());
+        assertArrayEquals(x509Certificate.getPublicKey().getEncoded(), certificate.getPublicKey().getEncoded());
+        assertEquals(1, ParsedCertificatesCache.size());
+    }
+
+    @Test
+    public void parsedCertificateDroppedOnChange() throws Exception {
+        X509Certificate otherX509Certificate = loadCertificate(OTHER_CERTIFICATE_LOCATION, OTHER_CERTIFICATE_ALIAS);
+
+        Certificate certificate = new Certificate(CryptoHelper.convertX509ToPEM(loadCertificate(CERTIFICATE_LOCATION, CERTIFICATE_ALIAS)));
+        X509Certificate x509Certificate = certificate.getX509();
+        certificate.setCertificateString(CryptoHelper.convertX509ToPEM(otherX509Certificate));
+        assertNotEquals(x509Certificate, certificate.getX509());
+        assertEquals(otherX509Certificate, certificate.getX509());
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        ParsedCertificatesCache.setMaximumSize(1);
+        ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(loadCertificate(CERTIFICATE_LOCATION, CERTIFICATE_ALIAS)));
+        ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(loadCertificate(OTHER_CERTIFICATE_LOCATION, OTHER_CERTIFICATE_ALIAS)));
+        assertEquals(1, ParsedCertificatesCache.size());
+    }
+
+    @Test(expected = CertificateException.class)
+    public void malformedCertificateIsNotCached() throws Exception {
+        try {
+            new Certificate("-----BEGIN CERTIFICATE-----\nmalformed\n-----END CERTIFICATE-----\n").getX509();
+        } finally {
+            assertEquals(0, ParsedCertificatesCache.size());
+        }
+    }
+
+    private void preloadAvailableAAMs(boolean parallel) throws Exception {
+        String coreAAMPEM = CryptoHelper.convertX509ToPEM(loadCertificate(CERTIFICATE_LOCATION, CERTIFICATE_ALIAS));
+        String platformAAMPEM = CryptoHelper.convertX509ToPEM(loadCertificate(OTHER_CERTIFICATE_LOCATION, OTHER_CERTIFICATE_ALIAS));
+        Map<String, Certificate> componentCertificates = new HashMap<>();
+        componentCertificates.put("registry", new Certificate(coreAAMPEM));
+        componentCertificates.put("malformed", new Certificate("-----BEGIN CERTIFICATE-----\nmalformed\n-----END CERTIFICATE-----\n"));
+        Map<String, AAM> availableAAMs = new HashMap<>();
+        availableAAMs.put(SecurityConstants.CORE_AAM_INSTANCE_ID, new AAM("", "", SecurityConstants.CORE_AAM_INSTANCE_ID, "",
+                new Certificate(coreAAMPEM), componentCertificates));
+        availableAAMs.put("platform-1", new AAM("", "", "platform-1", "", new Certificate(platformAAMPEM), null));
+        availableAAMs.put("noCertificate", new AAM("", "", "noCertificate", "", new Certificate(), new HashMap<>()));
+
+        assertEquals(2, ParsedCertificatesCache.preload(new AvailableAAMsCollection(availableAAMs), parallel));
+        assertEquals(2, ParsedCertificatesCache.size());
+        // the AAMs' certificates are ready and shared
+        assertSame(availableAAMs.get(SecurityConstants.CORE_AAM_INSTANCE_ID).getAamCACertificate().getPublicKey(),
+                componentCertificates.get("registry").getPublicKey());
+        assertSame(ParsedCertificatesCache.parse(platformAAMPEM).getX509Certificate(),
+                availableAAMs.get("platform-1").getAamCACertificate().getX509());
+        assertEquals(2, ParsedCertificatesCache.size());
+    }
+
+    @Test
+    public void availableAAMsPreloaded() throws Exception {
+        preloadAvailableAAMs(false);
+    }
+
+    @Test
+    public void availableAAMsPreloadedInParallel() throws Exception {
+        preloadAvailableAAMs(true);
+    }
+}
@@ -0,0 +1,130 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.utils.DummyCertificateIssuer;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class SymbioteCertificateChainVerifierTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private KeyPair coreAAMKeyPair;
+    private X509Certificate coreAAMCertificate;
+    private KeyPair platformAAMKeyPair;
+    private X509Certificate platformAAMCertificate;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        coreAAMKeyPair = CryptoHelper.createKeyPair();
+        coreAAMCertificate = DummyCertificateIssuer.buildCoreAAMCertificate(coreAAMKeyPair);
+        platformAAMKeyPair = CryptoHelper.createKeyPair();
+        platformAAMCertificate = DummyCertificateIssuer.buildPlatformAAMCertificate("platform-1", platformAAMKeyPair, coreAAMCertificate, coreAAMKeyPair.getPrivate());
+    }
+
+    private Boolean verifyDirectly(X509Certificate core, X509Certificate signing, X509Certificate client) throws Exception {
+        return SymbioteCertificateChainVerifier.isTrusted(
+                ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(core)),
+                ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(signing)),
+                ParsedCertificatesCache.parse(CryptoHelper.convertX509ToPEM(client)),
+                core.equals(signing));
+    }
+
+    private void assertSameOutcome(boolean expected, X509Certificate core, X509Certificate signing, X509Certificate client) throws Exception {
+        assertEquals(expected, CryptoHelper.isClientCertificateChainTrustedByPKIX(core, signing, client, core.equals(signing)));
+        assertEquals(expected, verifyDirectly(core, signing, client));
+    }
+
+    @Test
+    public void platformClientChain() throws Exception {
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), platformAAMCertificate, platformAAMKeyPair.getPrivate());
+        assertSameOutcome(true, coreAAMCertificate, platformAAMCertificate, client);
+    }
+
+    @Test
+    public void coreComponentChain() throws Exception {
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("registry@SymbIoTe_Core_AAM",
+                CryptoHelper.createKeyPair(), coreAAMCertificate, coreAAMKeyPair.getPrivate());
+        assertSameOutcome(true, coreAAMCertificate, coreAAMCertificate, client);
+        // not the two level chain expected for the given platform AAM
+        assertSameOutcome(false, coreAAMCertificate, platformAAMCertificate, client);
+    }
+
+    @Test
+    public void clientOfOtherPlatform() throws Exception {
+        KeyPair otherPlatformAAMKeyPair = CryptoHelper.createKeyPair();
+        X509Certificate otherPlatformAAMCertificate = DummyCertificateIssuer.buildPlatformAAMCertificate("platform-2",
+                otherPlatformAAMKeyPair, coreAAMCertificate, coreAAMKeyPair.getPrivate());
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("user@client@platform-2",
+                CryptoHelper.createKeyPair(), otherPlatformAAMCertificate, otherPlatformAAMKeyPair.getPrivate());
+        assertSameOutcome(false, coreAAMCertificate, platformAAMCertificate, client);
+        assertSameOutcome(false, coreAAMCertificate, coreAAMCertificate, client);
+    }
+
+    @Test
+    public void platformAAMOfOtherCore() throws Exception {
+        KeyPair otherCoreAAMKeyPair = CryptoHelper.createKeyPair();
+        X509Certificate otherCoreAAMCertificate = DummyCertificateIssuer.buildCoreAAMCertificate(otherCoreAAMKeyPair);
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), platformAAMCertificate, platformAAMKeyPair.getPrivate());
+        // same names, different keys
+        assertSameOutcome(false, otherCoreAAMCertificate, platformAAMCertificate, client);
+    }
+
+    @Test
+    public void clientSignedWithWrongKey() throws Exception {
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), platformAAMCertificate, CryptoHelper.createKeyPair().getPrivate());
+        assertSameOutcome(false, coreAAMCertificate, platformAAMCertificate, client);
+    }
+
+    @Test
+    public void expiredAndNotYetValidCertificates() throws Exception {
+        long now = System.currentTimeMillis();
+        String issuer = platformAAMCertificate.getSubjectX500Principal().getName();
+        X509Certificate expiredClient = DummyCertificateIssuer.buildCertificate("CN=user@client@platform-1", CryptoHelper.createKeyPair(),
+                issuer, platformAAMKeyPair.getPrivate(), new Date(now - 30 * DAY), new Date(now - DAY), null);
+        assertSameOutcome(false, coreAAMCertificate, platformAAMCertificate, expiredClient);
+        X509Certificate futureClient = DummyCertificateIssuer.buildCertificate("CN=user@client@platform-1", CryptoHelper.createKeyPair(),
+                issuer, platformAAMKeyPair.getPrivate(), new Date(now + DAY), new Date(now + 30 * DAY), null);
+        assertSameOutcome(false, coreAAMCertificate, platformAAMCertificate, futureClient);
+
+        X509Certificate expiredPlatformAAM = DummyCertificateIssuer.buildCertificate("CN=platform-1", platformAAMKeyPair,
+                coreAAMCertificate.getSubjectX500Principal().getName(), coreAAMKeyPair.getPrivate(),
+                new Date(now - 30 * DAY), new Date(now - DAY), new BasicConstraints(0));
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), expiredPlatformAAM, platformAAMKeyPair.getPrivate());
+        assertSameOutcome(false, coreAAMCertificate, expiredPlatformAAM, client);
+    }
+
+    @Test
+    public void signingCertificateNotCertificateAuthority() throws Exception {
+        long now = System.currentTimeMillis();
+        X509Certificate endEntityPlatformAAM = DummyCertificateIssuer.buildCertificate("CN=platform-1", platformAAMKeyPair,
+                coreAAMCertificate.getSubjectX500Principal().getName(), coreAAMKeyPair.getPrivate(),
+                new Date(now - DAY), new Date(now + 30 * DAY), new BasicConstraints(false));
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), endEntityPlatformAAM, platformAAMKeyPair.getPrivate());
+        assertSameOutcome(false, coreAAMCertificate, endEntityPlatformAAM, client);
+    }
+
+    @Test
+    public void ambiguousNamesLeftToPKIX() throws Exception {
+        // intermediate named like the core AAM, PKIX might build other paths
+        X509Certificate sameNamedAAM = DummyCertificateIssuer.buildCertificate(
+                coreAAMCertificate.getSubjectX500Principal().getName(), platformAAMKeyPair,
+                coreAAMCertificate.getSubjectX500Principal().getName(), coreAAMKeyPair.getPrivate(),
+                new Date(System.currentTimeMillis() - DAY), new Date(System.currentTimeMillis() + 30 * DAY), new BasicConstraints(0));
+        X509Certificate client = DummyCertificateIssuer.buildClientCertificate("user@client@platform-1",
+                CryptoHelper.createKeyPair(), sameNamedAAM, platformAAMKeyPair.getPrivate());
+        assertNull(verifyDirectly(coreAAMCertificate, sameNamedAAM, client));
+    }
+}
@@ -0,0 +1,170 @@
+package eu.h2020.symbiote.security.helpers;
+
+import eu.h2020.symbiote.security.commons.Certificate;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.ValidationResult;
+import eu.h2020.symbiote.security.commons.credentials.AuthorizationCredentials;
+import eu.h2020.symbiote.security.commons.credentials.HomeCredentials;
+import eu.h2020.symbiote.security.commons.jwt.JWTEngine;
+import eu.h2020.symbiote.security.communication.payloads.AAM;
+import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
+import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import eu.h2020.symbiote.security.utils.FakeClock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class VerifiedSecurityRequestsCacheTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CLIENT_CERTIFICATE_ALIAS = "client-core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+    private static final long BUCKET_WIDTH_MILLIS = 1000;
+
+    @After
+    public void tearDown() {
+        MutualAuthenticationHelper.disableVerifiedSecurityRequestsCache();
+        JWTEngine.disableVerifiedTokensCache();
+    }
+
+    @Test
+    public void requestsIdentifiedByTimestampAndCredentials() {
+        VerifiedSecurityRequestsCache cache = new VerifiedSecurityRequestsCache(10);
+        long expirationTime = System.currentTimeMillis() + 60000;
+        cache.putVerified(buildSecurityRequest(1000, "token1", "challenge1", "token2", "challenge2"), expirationTime);
+
+        // credentials order doesn't matter
+        assertTrue(cache.isVerified(buildSecurityRequest(1000, "token2", "challenge2", "token1", "challenge1")));
+        assertFalse(cache.isVerified(buildSecurityRequest(2000, "token1", "challenge1", "token2", "challenge2")));
+        assertFalse(cache.isVerified(buildSecurityRequest(1000, "token1", "challenge1")));
+        assertFalse(cache.isVerified(buildSecurityRequest(1000, "token1", "challenge2", "token2", "challenge1")));
+        // the token/challenge boundary is part of the key
+        assertFalse(cache.isVerified(buildSecurityRequest(1000, "token1c", "hallenge1", "token2", "challenge2")));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void entriesExpireAndGetEvicted() {
+        FakeClock clock = new FakeClock();
+        VerifiedSecurityRequestsCache cache = new VerifiedSecurityRequestsCache(2, clock);
+        long now = clock.millis();
+        SecurityRequest expiringRequest = buildSecurityRequest(1, "token", "challenge");
+        cache.putVerified(expiringRequest, now + 100);
+        cache.putVerified(buildSecurityRequest(2, "token", "challenge"), now - 1);
+        assertEquals(1, cache.size());
+        assertTrue(cache.isVerified(expiringRequest));
+        clock.advance(100);
+        assertFalse(cache.isVerified(expiringRequest));
+        // dropped with its bucket
+        clock.advance(BUCKET_WIDTH_MILLIS);
+        cache.isVerified(expiringRequest);
+        assertEquals(0, cache.size());
+
+        // the entries closest to their expiration are evicted first
+        cache.clear();
+        cache.putVerified(buildSecurityRequest(3, "token", "challenge"), now + 10000);
+        cache.putVerified(buildSecurityRequest(4, "token", "challenge"), now + 30000);
+        cache.putVerified(buildSecurityRequest(5, "token", "challenge"), now + 20000);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertFalse(cache.isVerified(buildSecurityRequest(3, "token", "challenge")));
+        assertTrue(cache.isVerified(buildSecurityRequest(4, "token", "challenge")));
+        assertTrue(cache.isVerified(buildSecurityRequest(5, "token", "challenge")));
+    }
+
+    @Test
+    public void concurrentPutsAndEvictionsKeepSizeBounded() throws Exception {
+        FakeClock clock = new FakeClock();
+        int maximumSize = 16;
+        VerifiedSecurityRequestsCache cache = new VerifiedSecurityRequestsCache(maximumSize, clock);
+        long now = clock.millis();
+        int threads = 8;
+        int putsPerThread = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> maximumSizes = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                maximumSizes.add(executor.submit(() -> {
+                    int maximumSeenSize = 0;
+                    for (int i = 0; i < putsPerThread; i++) {
+                        // spread over a few buckets so that the puts race with whole bucket evictions
+                        cache.putVerified(buildSecurityRequest(thread * putsPerThread + i, "token", "challenge"),
+                                now + BUCKET_WIDTH_MILLIS * (1 + i % 4));
+                        maximumSeenSize = Math.max(maximumSeenSize, cache.size());
+                    }
+                    return maximumSeenSize;
+                }));
+            }
+            for (Future<Integer> maximumSeenSize : maximumSizes)
+                assertTrue(maximumSeenSize.get() <= maximumSize + threads);
+        } finally {
+            executor.shutdown();
+        }
+
+        // no entry is left behind by the dropped buckets
+        clock.advance(6 * BUCKET_WIDTH_MILLIS);
+        cache.isVerified(buildSecurityRequest(-1, "token", "challenge"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void repeatedRequestSkipsVerification() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        X509Certificate issuingAAMCertificate = (X509Certificate) ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS);
+        X509Certificate clientCertificate = (X509Certificate) ks.getCertificate(CLIENT_CERTIFICATE_ALIAS);
+        PrivateKey clientPrivateKey = (PrivateKey) ks.getKey(CLIENT_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+        AAM issuingAAM = new AAM("", "", "", new Certificate(CryptoHelper.convertX509ToPEM(issuingAAMCertificate)), new HashMap<>());
+        HomeCredentials homeCredentials = new HomeCredentials(issuingAAM, "testusername", "testclientid", new Certificate(CryptoHelper.convertX509ToPEM(clientCertificate)), clientPrivateKey);
+        Token token = new Token(DummyTokenIssuer.buildAuthorizationToken("testclientid",
+                null,
+                clientCertificate.getPublicKey().getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                "",
+                issuingAAMCertificate.getPublicKey(),
+                (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray()),
+                DummyTokenIssuer.SignatureType.PROPER));
+        Set<AuthorizationCredentials> authorizationCredentials = Collections.singleton(new AuthorizationCredentials(token, issuingAAM, homeCredentials));
+
+        MutualAuthenticationHelper.SERVICE_RESPONSE_EXPIRATION_TIME = 60;
+        MutualAuthenticationHelper.enableVerifiedSecurityRequestsCache(100);
+        // counts the signature verifications
+        JWTEngine.enableVerifiedTokensCache(100);
+        SecurityRequest securityRequest = MutualAuthenticationHelper.getSecurityRequest(authorizationCredentials, false);
+
+        assertSame(ValidationResult.VALID, MutualAuthenticationHelper.verifySecurityRequest(securityRequest));
+        long verifications = JWTEngine.getVerifiedTokensCache().getMissCount();
+        for (int i = 0; i < 10; i++)
+            assertTrue(MutualAuthenticationHelper.isSecurityRequestVerified(securityRequest));
+        assertEquals(verifications, JWTEngine.getVerifiedTokensCache().getMissCount());
+        assertEquals(10, MutualAuthenticationHelper.getVerifiedSecurityRequestsCache().getHitCount());
+    }
+
+    private static SecurityRequest buildSecurityRequest(long timestamp, String... tokensAndChallenges) {
+        Set<SecurityCredentials> securityCredentials = new HashSet<>();
+        for (int i = 0; i < tokensAndChallenges.length; i += 2) {
+            securityCredentials.add(new SecurityCredentials(tokensAndChallenges[i],
+                    Optional.of(tokensAndChallenges[i + 1]),
+                    Optional.empty(),
+                    Optional.empty(),
+                    Optional.empty()));
+        }
+        return new SecurityRequest(securityCredentials, timestamp);
+    }
+}
@@ -0,0 +1,120 @@
+package eu.h2020.symbiote.security.helpers.accesspolicies;
+
+import eu.h2020.symbiote.security.accesspolicies.IAccessPolicy;
+import eu.h2020.symbiote.security.accesspolicies.common.singletoken.SingleLocalHomeTokenAccessPolicy;
+import eu.h2020.symbiote.security.commons.SecurityConstants;
+import eu.h2020.symbiote.security.commons.Token;
+import eu.h2020.symbiote.security.commons.jwt.JWTEngine;
+import eu.h2020.symbiote.security.communication.payloads.SecurityCredentials;
+import eu.h2020.symbiote.security.communication.payloads.SecurityRequest;
+import eu.h2020.symbiote.security.helpers.ABACPolicyHelper;
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import eu.h2020.symbiote.security.utils.DummyTokenIssuer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ABACPolicyHelperDeferredVerificationTest {
+
+    private static final String ISSUING_AAM_CERTIFICATE_ALIAS = "core-1";
+    private static final String CERTIFICATE_LOCATION = "./src/test/resources/core.p12";
+    private static final String CERTIFICATE_PASSWORD = "1234567";
+    private static final String NAME_ATTRIBUTE = "name";
+    private final String deploymentId = "deploymentId";
+    private final String goodResourceID = "goodResourceID";
+    private final String openResourceID = "openResourceID";
+
+    private PublicKey issuingAAMPublicKey;
+    private PrivateKey issuingAAMPrivateKey;
+    private PrivateKey forgeryKey;
+    private Map<String, IAccessPolicy> resourceAccessPolicyMap;
+
+    @Before
+    public void setUp() throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(new FileInputStream(CERTIFICATE_LOCATION), CERTIFICATE_PASSWORD.toCharArray());
+        issuingAAMPublicKey = ks.getCertificate(ISSUING_AAM_CERTIFICATE_ALIAS).getPublicKey();
+        issuingAAMPrivateKey = (PrivateKey) ks.getKey(ISSUING_AAM_CERTIFICATE_ALIAS, CERTIFICATE_PASSWORD.toCharArray());
+        forgeryKey = CryptoHelper.createKeyPair().getPrivate();
+
+        Map<String, String> requiredClaims = new HashMap<>();
+        requiredClaims.put(SecurityConstants.SYMBIOTE_ATTRIBUTES_PREFIX + NAME_ATTRIBUTE, "John");
+        resourceAccessPolicyMap = new HashMap<>();
+        resourceAccessPolicyMap.put(goodResourceID, new SingleLocalHomeTokenAccessPolicy(deploymentId, requiredClaims));
+        resourceAccessPolicyMap.put(openResourceID, null);
+        // the cache misses count the verified signatures
+        JWTEngine.enableVerifiedTokensCache(100);
+    }
+
+    @After
+    public void tearDown() {
+        JWTEngine.disableVerifiedTokensCache();
+    }
+
+    @Test
+    public void onlyMatchingTokensGetVerified() {
+        SecurityCredentials validCredentials = new SecurityCredentials(buildToken("John", issuingAAMPrivateKey));
+        SecurityCredentials nonMatchingCredentials = new SecurityCredentials(buildToken("Mike", issuingAAMPrivateKey));
+        SecurityRequest securityRequest = buildSecurityRequest(validCredentials, nonMatchingCredentials);
+
+        Map<String, IAccessPolicy> accessPolicies = Collections.singletonMap(goodResourceID, resourceAccessPolicyMap.get(goodResourceID));
+        Map<String, Set<SecurityCredentials>> authorizedResources = ABACPolicyHelper.checkRequestedOperationAccess(accessPolicies, securityRequest, true);
+
+        assertEquals(Collections.singleton(validCredentials), authorizedResources.get(goodResourceID));
+        assertEquals(1, JWTEngine.getVerifiedTokensCache().getMissCount());
+    }
+
+    @Test
+    public void forgedMatchingTokenRejected() {
+        SecurityCredentials forgedCredentials = new SecurityCredentials(buildToken("John", forgeryKey));
+        SecurityRequest securityRequest = buildSecurityRequest(forgedCredentials);
+
+        assertTrue(ABACPolicyHelper.checkRequestedOperationAccess(resourceAccessPolicyMap, securityRequest, true).isEmpty());
+        assertTrue(ABACPolicyHelper.checkRequestedOperationAccess(resourceAccessPolicyMap, securityRequest).isEmpty());
+    }
+
+    @Test
+    public void policyResolvedAgainAfterFailedVerification() {
+        SecurityCredentials validCredentials = new SecurityCredentials(buildToken("John", issuingAAMPrivateKey));
+        List<SecurityCredentials> credentials = new ArrayList<>();
+        credentials.add(validCredentials);
+        for (int i = 0; i < 5; i++)
+            credentials.add(new SecurityCredentials(buildToken("John", forgeryKey)));
+        SecurityRequest securityRequest = buildSecurityRequest(credentials.toArray(new SecurityCredentials[0]));
+
+        Map<String, Set<SecurityCredentials>> deferred = ABACPolicyHelper.checkRequestedOperationAccess(resourceAccessPolicyMap, securityRequest, true);
+        Map<String, Set<SecurityCredentials>> eager = ABACPolicyHelper.checkRequestedOperationAccess(resourceAccessPolicyMap, securityRequest);
+
+        assertEquals(Collections.singleton(validCredentials), deferred.get(goodResourceID));
+        assertEquals(Collections.singleton(validCredentials), deferred.get(openResourceID));
+        assertEquals(eager, deferred);
+    }
+
+    private String buildToken(String name, PrivateKey signingKey) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(NAME_ATTRIBUTE, name);
+        return DummyTokenIssuer.buildAuthorizationToken("testClient",
+                attributes,
+                issuingAAMPublicKey.getEncoded(),
+                Token.Type.HOME,
+                3600000L,
+                deploymentId,
+                issuingAAMPublicKey,
+                signingKey,
+                DummyTokenIssuer.SignatureType.PROPER);
+    }
+
+    private static SecurityRequest buildSecurityRequest(SecurityCredentials... credentials) {
+        return new SecurityRequest(new HashSet<>(Arrays.asList(credentials)), System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,73 @@
+package eu.h2020.symbiote.security.utils;
+
+import eu.h2020.symbiote.security.helpers.CryptoHelper;
+import eu.h2020.symbiote.security.helpers.ECDSAHelper;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+/**
+ * symbIoTe shaped X.509 certificates builder: core AAM (root CA), platform AAM (intermediate CA) and client certificates.
+ */
+public class DummyCertificateIssuer {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static SecureRandom random = new SecureRandom();
+
+    /**
+     * @return self signed core AAM certificate valid for a year
+     */
+    public static X509Certificate buildCoreAAMCertificate(KeyPair coreAAMKeyPair) throws Exception {
+        return buildCertificate("CN=SymbIoTe_Core_AAM", coreAAMKeyPair, "CN=SymbIoTe_Core_AAM", coreAAMKeyPair.getPrivate(),
+                new Date(System.currentTimeMillis() - DAY), new Date(System.currentTimeMillis() + 365 * DAY), new BasicConstraints(true));
+    }
+
+    /**
+     * @return platform AAM certificate issued by the core AAM and valid for a year
+     */
+    public static X509Certificate buildPlatformAAMCertificate(String platformId, KeyPair platformAAMKeyPair,
+                                                              X509Certificate coreAAMCertificate, PrivateKey coreAAMPrivateKey) throws Exception {
+        return buildCertificate("CN=" + platformId, platformAAMKeyPair, coreAAMCertificate.getSubjectX500Principal().getName(), coreAAMPrivateKey,
+                new Date(System.currentTimeMillis() - DAY), new Date(System.currentTimeMillis() + 365 * DAY), new BasicConstraints(0));
+    }
+
+    /**
+     * @return client (end entity) certificate issued by the given AAM and valid for a month
+     */
+    public static X509Certificate buildClientCertificate(String subject, KeyPair clientKeyPair,
+                                                         X509Certificate issuerCertificate, PrivateKey issuerPrivateKey) throws Exception {
+        return buildCertificate("CN=" + subject, clientKeyPair, issuerCertificate.getSubjectX500Principal().getName(), issuerPrivateKey,
+                new Date(System.currentTimeMillis() - DAY), new Date(System.currentTimeMillis() + 30 * DAY), null);
+    }
+
+    /**
+     * @param basicConstraints of a CA certificate, null for end entity certificates
+     */
+    public static X509Certificate buildCertificate(String subject, KeyPair subjectKeyPair,
+                                                   String issuer, PrivateKey issuerPrivateKey,
+                                                   Date notBefore, Date notAfter, BasicConstraints basicConstraints) throws Exception {
+        ECDSAHelper.enableECDSAProvider();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name(issuer),
+                BigInteger.valueOf(random.nextInt(Integer.MAX_VALUE)),
+                notBefore,
+                notAfter,
+                new X500Name(subject),
+                subjectKeyPair.getPublic());
+        if (basicConstraints != null)
+            builder.addExtension(Extension.basicConstraints, true, basicConstraints);
+        return new JcaX509CertificateConverter().setProvider(CryptoHelper.PROVIDER_NAME).getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").setProvider(CryptoHelper.PROVIDER_NAME).build(issuerPrivateKey)));
+    }
+}
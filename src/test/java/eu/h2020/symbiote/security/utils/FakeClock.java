@@ -0,0 +1,52 @@
+package eu.h2020.symbiote.security.utils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Clock that only moves when told to, for testing time dependent caches without sleeping.
+ */
+public class FakeClock extends Clock {
+
+    private volatile long millis;
+
+    /**
+     * starts at the current time
+     */
+    public FakeClock() {
+        this(System.currentTimeMillis());
+    }
+
+    public FakeClock(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * @param millis to move the clock forward by
+     */
+    public void advance(long millis) {
+        this.millis += millis;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+}